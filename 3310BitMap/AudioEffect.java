@@ -0,0 +1,121 @@
+/**
+ * An in-place operation on the normalized samples of one channel.
+ * <p>
+ * Effects get the position of the slice within the whole recording, so position-dependent
+ * effects such as fades give the same result however the samples are split into blocks.
+ * Effects hold no mutable state and may process different slices concurrently.
+ */
+public interface AudioEffect {
+
+    /**
+     * Processes {@code samples[offset, offset + length)} in place.
+     *
+     * @param  samples     the samples of one channel, normalized to -1..1.
+     * @param  offset      the index of the first sample to process.
+     * @param  length      the number of samples to process.
+     * @param  firstFrame  the frame index, within the recording, of {@code samples[offset]}.
+     */
+    void process(float[] samples, int offset, int length, long firstFrame);
+
+    /**
+     * Converts a level in dBFS into a linear amplitude.
+     *
+     * @param  db  the level in decibels relative to full scale.
+     * @return the amplitude, 1 for 0 dB.
+     */
+    static double dbToAmplitude(double db) {
+        return Math.pow(10, db / 20);
+    }
+
+    /**
+     * Multiplies every sample by a constant gain.
+     *
+     * @param  db  the gain in decibels.
+     * @return the effect.
+     */
+    static AudioEffect gain(double db) {
+        float factor = (float) dbToAmplitude(db);
+        return (samples, offset, length, firstFrame) -> {
+            for (int i = offset; i < offset + length; i++) {
+                samples[i] *= factor;
+            }
+        };
+    }
+
+    /**
+     * Ramps the gain linearly from 0 to 1 over {@code [start, start + length)}; samples before
+     * the ramp are silenced and samples after it are untouched.
+     *
+     * @param  start   the frame the fade begins at.
+     * @param  length  the length of the fade in frames.
+     * @return the effect.
+     */
+    static AudioEffect fadeIn(long start, long length) {
+        double step = 1.0 / Math.max(1, length);
+        return (samples, offset, count, firstFrame) -> {
+            for (int i = 0; i < count; i++) {
+                double gain = (firstFrame + i - start) * step;
+                if (gain < 1) {
+                    samples[offset + i] *= (float) Math.max(0, gain);
+                }
+            }
+        };
+    }
+
+    /**
+     * Ramps the gain linearly from 1 to 0 over {@code [start, start + length)}; samples before
+     * the ramp are untouched and samples after it are silenced.
+     *
+     * @param  start   the frame the fade begins at.
+     * @param  length  the length of the fade in frames.
+     * @return the effect.
+     */
+    static AudioEffect fadeOut(long start, long length) {
+        double step = 1.0 / Math.max(1, length);
+        return (samples, offset, count, firstFrame) -> {
+            for (int i = 0; i < count; i++) {
+                double gain = 1 - (firstFrame + i - start) * step;
+                if (gain < 1) {
+                    samples[offset + i] *= (float) Math.max(0, gain);
+                }
+            }
+        };
+    }
+
+    /**
+     * Clamps samples to the amplitude of a threshold level.
+     *
+     * @param  thresholdDb  the clipping level in dBFS, for example -5.
+     * @return the effect.
+     */
+    static AudioEffect hardClip(double thresholdDb) {
+        float limit = (float) dbToAmplitude(thresholdDb);
+        return (samples, offset, length, firstFrame) -> {
+            for (int i = offset; i < offset + length; i++) {
+                samples[i] = Math.max(-limit, Math.min(limit, samples[i]));
+            }
+        };
+    }
+
+    /**
+     * Leaves samples below a threshold untouched and compresses the excess above it with a
+     * {@code tanh} curve, so the output approaches full scale without a hard corner.
+     *
+     * @param  thresholdDb  the level in dBFS where the curve starts, below 0.
+     * @return the effect.
+     */
+    static AudioEffect softClip(double thresholdDb) {
+        double knee = Math.min(dbToAmplitude(thresholdDb), 1);
+        double headroom = 1 - knee;
+        return (samples, offset, length, firstFrame) -> {
+            for (int i = offset; i < offset + length; i++) {
+                float s = samples[i];
+                double magnitude = Math.abs(s);
+                if (magnitude > knee) {
+                    double shaped = headroom > 0 ? knee + headroom * Math.tanh((magnitude - knee) / headroom) : knee;
+                    samples[i] = (float) Math.copySign(shaped, s);
+                }
+            }
+        };
+    }
+}
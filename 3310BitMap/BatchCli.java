@@ -0,0 +1,390 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless batch entry point that runs BMP filters, WAV effects or loudness metering over many
+ * files in one JVM.
+ * <pre>
+ * java BatchCli bmp [-o dir] [-j n] [-e skip|clamp|wrap] [-f filters] &lt;file|dir|glob&gt;...
+ * java BatchCli wav [-o dir] [-j n] [-x effects] [-b 8|16|24|32|float] [-r rate] [-c channels] &lt;file|dir|glob&gt;...
+ * java BatchCli loudness [-o dir] [-j n] [-w seconds] &lt;file|dir|glob&gt;...
+ * </pre>
+ * Filters are a comma-separated list of {@code blur}, {@code edge}, {@code gaussian},
+ * {@code box:R} and {@code gauss:R}; each one is written to its own file, and filters joined
+ * with {@code +} are chained. Effects are a comma-separated chain of {@code fadein},
+ * {@code fadeout}, {@code gain:DB}, {@code clip:DB} and {@code softclip:DB} applied in order.
+ * WAV mode converts every file to the house format given by {@code -r}, {@code -b} and
+ * {@code -c}: a {@link ChannelMixer} remix, then a {@link Resampler}, then the effects.
+ * Loudness mode prints one {@link LoudnessReport} summary line per WAV file and writes its
+ * time series, in windows of {@code -w} seconds, to {@code <name>-loudness.csv}.
+ * <p>
+ * Outputs mirror each input's path below the directory or glob root it was found under, so
+ * files of the same name in different directories do not collide, and a file that would
+ * replace its own input is reported as a failure.
+ * <p>
+ * Each file is read, processed and written by its own I/O task, on a virtual thread where
+ * the runtime has them. The convolutions run on one shared pool of {@code -j} workers, and at
+ * most {@code 2 * j} files are in flight at once, which bounds memory however many files are
+ * queued. Metering runs on the file's own task, so in loudness mode at most {@code j} files
+ * are in flight.
+ */
+public class BatchCli {
+
+    private enum Mode {
+        BMP(".bmp"), WAV(".wav"), LOUDNESS(".wav");
+
+        final String extension;
+
+        Mode(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private final Mode mode;
+    private final Path outputDir;
+    private final ForkJoinPool cpuPool;
+    private final List<String> filterNames = new ArrayList<>();
+    private final List<FilterChain> filters = new ArrayList<>();
+    private final List<String> effects = new ArrayList<>();
+    private final String sampleFormat;
+    private final double windowSeconds;
+    private final int smpRate;
+    private final int numChn;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /** A file to process and its path relative to the root it was found under. */
+    private static class Input {
+        final Path file;
+        final Path relative;
+
+        Input(Path file, Path relative) {
+            this.file = file;
+            this.relative = relative;
+        }
+    }
+
+    private BatchCli(Mode mode, Path outputDir, int workers, EdgeMode edgeMode, String filterSpec, String effectSpec,
+                     String sampleFormat, double windowSeconds, int smpRate, int numChn) {
+        this.mode = mode;
+        this.outputDir = outputDir;
+        this.cpuPool = new ForkJoinPool(workers);
+        this.sampleFormat = sampleFormat;
+        this.windowSeconds = windowSeconds;
+        this.smpRate = smpRate;
+        this.numChn = numChn;
+        for (String name : filterSpec.split(",")) {
+            FilterChain chain = new FilterChain();
+            for (String stage : name.split("\\+")) {
+                chain.then(parseKernel(stage), edgeMode);
+            }
+            filterNames.add(name.replace(':', '-').replace('+', '_'));
+            filters.add(chain);
+        }
+        if (!effectSpec.isEmpty()) {
+            for (String effect : effectSpec.split(",")) {
+                // Validate now rather than once per file; fades need the file length, so they are built per file
+                parseEffect(effect, 1);
+                effects.add(effect);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        try {
+            Mode mode = Mode.valueOf(args[0].toUpperCase(Locale.ROOT));
+            Path outputDir = Paths.get("out");
+            int workers = Runtime.getRuntime().availableProcessors();
+            EdgeMode edgeMode = EdgeMode.CLAMP;
+            String filterSpec = "blur";
+            String effectSpec = "";
+            String sampleFormat = null;
+            double windowSeconds = LoudnessMeter.DEFAULT_WINDOW_SECONDS;
+            int smpRate = 0;
+            int numChn = 0;
+            List<String> inputs = new ArrayList<>();
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o": outputDir = Paths.get(args[++i]); break;
+                    case "-j": workers = Integer.parseInt(args[++i]); break;
+                    case "-e": edgeMode = EdgeMode.valueOf(args[++i].toUpperCase(Locale.ROOT)); break;
+                    case "-f": filterSpec = args[++i]; break;
+                    case "-x": effectSpec = args[++i]; break;
+                    case "-b": sampleFormat = args[++i]; break;
+                    case "-w": windowSeconds = Double.parseDouble(args[++i]); break;
+                    case "-r": smpRate = Integer.parseInt(args[++i]); break;
+                    case "-c": numChn = Integer.parseInt(args[++i]); break;
+                    default: inputs.add(args[i]); break;
+                }
+            }
+            if (workers < 1) {
+                throw new IllegalArgumentException("-j must be at least 1");
+            }
+            if (!(windowSeconds > 0)) {
+                throw new IllegalArgumentException("-w must be positive");
+            }
+            if (smpRate < 0 || numChn < 0) {
+                throw new IllegalArgumentException("-r and -c must be positive");
+            }
+            if (sampleFormat != null && !List.of("8", "16", "24", "32", "float").contains(sampleFormat)) {
+                throw new IllegalArgumentException("-b must be 8, 16, 24, 32 or float: " + sampleFormat);
+            }
+
+            BatchCli cli = new BatchCli(mode, outputDir, workers, edgeMode, filterSpec, effectSpec, sampleFormat, windowSeconds,
+                    smpRate, numChn);
+            List<Input> files = cli.collect(inputs);
+            Files.createDirectories(outputDir);
+
+            long start = System.nanoTime();
+            cli.run(files, workers);
+            System.out.printf("Processed %d files in %d ms, %d failed%n", files.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), cli.failures.get());
+            if (cli.failures.get() > 0) {
+                System.exit(1);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+            System.err.println("Invalid arguments: " + ex.getMessage());
+            usage();
+            System.exit(2);
+        } catch (IOException | InterruptedException ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: BatchCli bmp [-o dir] [-j n] [-e skip|clamp|wrap] [-f filters] <file|dir|glob>...");
+        System.err.println("       BatchCli wav [-o dir] [-j n] [-x effects] [-b 8|16|24|32|float] [-r rate] [-c channels]"
+                + " <file|dir|glob>...");
+        System.err.println("       BatchCli loudness [-o dir] [-j n] [-w seconds] <file|dir|glob>...");
+        System.err.println("filters: blur, edge, gaussian, box:R, gauss:R; ',' separates outputs, '+' chains");
+        System.err.println("effects: fadein, fadeout, gain:DB, clip:DB, softclip:DB; ',' separates chained effects");
+    }
+
+    /**
+     * Expands the command-line inputs into files: plain files are taken as they are, directories
+     * are searched recursively for the mode's extension, and anything else is treated as a glob.
+     *
+     * @throws IOException if an input does not exist or two inputs would be written to the same place.
+     */
+    private List<Input> collect(List<String> inputs) throws IOException {
+        String extension = mode.extension;
+        List<Input> files = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isRegularFile(path)) {
+                files.add(new Input(path, path.getFileName()));
+            } else if (Files.isDirectory(path)) {
+                files.addAll(walk(path, p -> p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(extension)));
+            } else {
+                // Walk from the longest directory prefix that has no glob characters
+                int wildcard = indexOfWildcard(input);
+                if (wildcard < 0) {
+                    throw new IOException("No such file or directory: " + input);
+                }
+                int slash = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf('\\', wildcard));
+                Path root = slash < 0 ? Paths.get("") : Paths.get(input.substring(0, slash + 1));
+                files.addAll(walk(root, FileSystems.getDefault().getPathMatcher("glob:" + input)));
+            }
+        }
+        Map<Path, Path> seen = new HashMap<>();
+        for (Input input : files) {
+            Path other = seen.putIfAbsent(input.relative, input.file);
+            if (other != null) {
+                throw new IOException(other + " and " + input.file + " would be written to the same output");
+            }
+        }
+        return files;
+    }
+
+    private static int indexOfWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Input> walk(Path root, PathMatcher filter) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(Files::isRegularFile).filter(filter::matches).sorted()
+                    .map(file -> new Input(file, root.relativize(file))).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Processes every file, keeping at most {@code 2 * workers} in flight, or {@code workers}
+     * when the work happens on the I/O tasks themselves.
+     */
+    private void run(List<Input> files, int workers) throws InterruptedException {
+        int inFlight = mode == Mode.LOUDNESS ? workers : 2 * workers;
+        Semaphore permits = new Semaphore(inFlight);
+        ExecutorService io = newIoExecutor(inFlight);
+        try {
+            for (Input input : files) {
+                permits.acquire();
+                io.execute(() -> {
+                    try {
+                        process(input);
+                    } catch (IOException | RuntimeException ex) {
+                        // Malformed files can fail anywhere in a decoder, so every failure is counted
+                        failures.incrementAndGet();
+                        System.err.println(input.file + ": " + (ex.getMessage() != null ? ex.getMessage() : ex));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } finally {
+            io.shutdown();
+            io.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            cpuPool.shutdown();
+        }
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor on runtimes that have one (Java 21 and later),
+     * otherwise a fixed pool of platform threads. The method is looked up reflectively so the
+     * sources still compile on Java 17.
+     */
+    private static ExecutorService newIoExecutor(int fallbackThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(fallbackThreads);
+        }
+    }
+
+    private void process(Input input) throws IOException {
+        Path file = input.file;
+        if (mode == Mode.BMP) {
+            processBitmap(input);
+        } else if (mode == Mode.WAV) {
+            processWave(file, output(input, ".wav"));
+        } else {
+            LoudnessReport report = LoudnessMeter.measure(file, windowSeconds);
+            report.writeCsv(output(input, "-loudness.csv"));
+            System.out.println(file + ": " + report.summary());
+        }
+    }
+
+    /**
+     * Returns the output file for an input: its relative path under the output directory, with
+     * the extension replaced by {@code suffix}. The directories are created as needed.
+     *
+     * @throws IOException if the output would be the input file itself.
+     */
+    private Path output(Input input, String suffix) throws IOException {
+        String name = input.relative.getFileName().toString();
+        String baseName = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+        Path output = outputDir.resolve(input.relative).resolveSibling(baseName + suffix);
+        if (Files.exists(output) && Files.isSameFile(output, input.file)) {
+            throw new IOException("Output " + output + " would overwrite the input");
+        }
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        return output;
+    }
+
+    private void processBitmap(Input input) throws IOException {
+        Path file = input.file;
+        PixelRaster image;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            image = BmpDecoder.decode(channel, BmpHeader.read(channel));
+        }
+        FilterPipeline pipeline = new FilterPipeline();
+        int[] outputs = new int[filters.size()];
+        for (int i = 0; i < filters.size(); i++) {
+            outputs[i] = pipeline.add(filters.get(i));
+        }
+        PixelRaster[] filtered = pipeline.apply(image, cpuPool);
+        for (int i = 0; i < outputs.length; i++) {
+            BmpWriter.write(filtered[outputs[i]], output(input, "-" + filterNames.get(i) + ".bmp"), 24);
+        }
+    }
+
+    private void processWave(Path file, Path output) throws IOException {
+        try (WavSampleReader reader = WavSampleReader.open(file)) {
+            WavFormat source = reader.getFormat();
+            int outChannels = numChn > 0 ? numChn : source.numChn;
+            int outRate = smpRate > 0 ? smpRate : source.smpRate;
+            ChannelMixer mixer = outChannels == source.numChn ? null
+                    : ChannelMixer.forLayout(source.numChn, source.channelMask, outChannels);
+            Resampler resampler = outRate == source.smpRate ? null : new Resampler(outChannels, source.smpRate, outRate);
+            long frameCount = resampler == null ? reader.getFrameCount() : resampler.outputLength(reader.getFrameCount());
+            EffectsEngine engine = new EffectsEngine(cpuPool);
+            for (String effect : effects) {
+                engine.add(parseEffect(effect, frameCount));
+            }
+            try (WavWriter writer = new WavWriter(output, outputFormat(source, outChannels, outRate))) {
+                engine.process(reader, mixer, resampler, writer);
+            }
+        }
+    }
+
+    private WavFormat outputFormat(WavFormat source, int outChannels, int outRate) {
+        String format = sampleFormat;
+        if (format == null) {
+            boolean writable = source.sampleFormat == WavFormat.FORMAT_PCM
+                    || (source.sampleFormat == WavFormat.FORMAT_IEEE_FLOAT && source.smpBits == 32);
+            format = !writable ? "float"
+                    : source.sampleFormat == WavFormat.FORMAT_IEEE_FLOAT ? "float" : Integer.toString(source.smpBits);
+        }
+        if (format.equals("float")) {
+            return WavFormat.ieeeFloat(outChannels, outRate);
+        }
+        return WavFormat.pcm(outChannels, outRate, Integer.parseInt(format));
+    }
+
+    private static ConvolutionKernel parseKernel(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "blur": return ConvolutionKernel.BOX_3X3;
+            case "edge": return ConvolutionKernel.EDGE_3X3;
+            case "gaussian": return ConvolutionKernel.GAUSSIAN_3X3;
+            case "box": return ConvolutionKernel.box(Integer.parseInt(parts[1]));
+            case "gauss": return ConvolutionKernel.gaussian(Integer.parseInt(parts[1]));
+            default: throw new IllegalArgumentException("Unknown filter: " + spec);
+        }
+    }
+
+    private static AudioEffect parseEffect(String spec, long frameCount) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "fadein": return AudioEffect.fadeIn(0, frameCount);
+            case "fadeout": return AudioEffect.fadeOut(0, frameCount);
+            case "gain": return AudioEffect.gain(Double.parseDouble(parts[1]));
+            case "clip": return AudioEffect.hardClip(Double.parseDouble(parts[1]));
+            case "softclip": return AudioEffect.softClip(Double.parseDouble(parts[1]));
+            default: throw new IllegalArgumentException("Unknown effect: " + spec);
+        }
+    }
+}
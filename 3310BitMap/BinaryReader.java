@@ -0,0 +1,204 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A cursor over a {@link ByteBuffer} with typed accessors for the fields of binary file
+ * headers: unsigned 8-, 16- and 32-bit integers, signed 24-bit samples and FourCC tags.
+ * <p>
+ * Multi-byte fields are read through {@link VarHandle} views of the buffer in the byte order
+ * chosen at construction, so a field is one (possibly unaligned) load rather than a loop over
+ * its bytes. Reading allocates nothing: FourCC tags are returned as {@code int}s and compared
+ * against constants made with {@link #fourCC(String)}. The buffer's own position and limit are
+ * never changed, so several readers can share one buffer.
+ * <p>
+ * The same accessors exist in absolute form, taking a byte index, as static methods.
+ * This class targets Java 17, where {@code MemorySegment} is still incubating; a
+ * {@code ByteBuffer} covers both heap and mapped data here.
+ */
+public final class BinaryReader {
+
+    private static final VarHandle SHORT_LE = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle SHORT_BE = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_BE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final ByteBuffer buffer;
+    private final boolean littleEndian;
+    private int position;
+
+    /**
+     * Creates a reader starting at the buffer's current position, in the buffer's byte order.
+     *
+     * @param  buffer  the bytes to read.
+     */
+    public BinaryReader(ByteBuffer buffer) {
+        this(buffer, buffer.order());
+    }
+
+    /**
+     * Creates a reader starting at the buffer's current position.
+     *
+     * @param  buffer  the bytes to read.
+     * @param  order   the byte order of multi-byte fields.
+     */
+    public BinaryReader(ByteBuffer buffer, ByteOrder order) {
+        this.buffer = buffer;
+        this.littleEndian = order == ByteOrder.LITTLE_ENDIAN;
+        this.position = buffer.position();
+    }
+
+    /** Returns the index in the buffer of the next byte to read. */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Moves the cursor.
+     *
+     * @param  position  the index in the buffer of the next byte to read.
+     * @return this reader.
+     */
+    public BinaryReader position(int position) {
+        if (position < 0 || position > buffer.limit()) {
+            throw new IndexOutOfBoundsException("Position " + position + " outside 0.." + buffer.limit());
+        }
+        this.position = position;
+        return this;
+    }
+
+    /**
+     * Moves the cursor past {@code count} bytes.
+     *
+     * @param  count  the number of bytes to skip.
+     * @return this reader.
+     */
+    public BinaryReader skip(int count) {
+        return position(position + count);
+    }
+
+    /** Returns the number of bytes between the cursor and the buffer's limit. */
+    public int remaining() {
+        return buffer.limit() - position;
+    }
+
+    /** Reads an unsigned byte. */
+    public int u8() {
+        return u8(buffer, advance(1));
+    }
+
+    /** Reads an unsigned 16-bit integer. */
+    public int u16() {
+        return littleEndian ? u16LE(buffer, advance(2)) : u16BE(buffer, advance(2));
+    }
+
+    /** Reads a signed 16-bit integer. */
+    public int i16() {
+        return littleEndian ? (short) SHORT_LE.get(buffer, advance(2)) : (short) SHORT_BE.get(buffer, advance(2));
+    }
+
+    /** Reads a signed 24-bit integer, sign-extended. */
+    public int i24() {
+        return littleEndian ? i24LE(buffer, advance(3)) : i24BE(buffer, advance(3));
+    }
+
+    /** Reads a signed 32-bit integer. */
+    public int i32() {
+        return littleEndian ? i32LE(buffer, advance(4)) : i32BE(buffer, advance(4));
+    }
+
+    /** Reads an unsigned 32-bit integer. */
+    public long u32() {
+        return Integer.toUnsignedLong(i32());
+    }
+
+    /**
+     * Reads a four-character code. Tags are stored as characters, so the result does not
+     * depend on the reader's byte order.
+     *
+     * @return the tag, comparable with {@link #fourCC(String)}.
+     */
+    public int fourCC() {
+        return fourCC(buffer, advance(4));
+    }
+
+    private int advance(int length) {
+        int index = position;
+        if (index + length > buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+        position = index + length;
+        return index;
+    }
+
+    public static int u8(ByteBuffer buffer, int index) {
+        return buffer.get(index) & 0xFF;
+    }
+
+    public static int u16LE(ByteBuffer buffer, int index) {
+        return (short) SHORT_LE.get(buffer, index) & 0xFFFF;
+    }
+
+    public static int u16BE(ByteBuffer buffer, int index) {
+        return (short) SHORT_BE.get(buffer, index) & 0xFFFF;
+    }
+
+    public static int i24LE(ByteBuffer buffer, int index) {
+        // Low 16 bits unsigned, top byte carries the sign
+        return u16LE(buffer, index) | buffer.get(index + 2) << 16;
+    }
+
+    public static int i24BE(ByteBuffer buffer, int index) {
+        return buffer.get(index) << 16 | u16BE(buffer, index + 1);
+    }
+
+    public static int i32LE(ByteBuffer buffer, int index) {
+        return (int) INT_LE.get(buffer, index);
+    }
+
+    public static int i32BE(ByteBuffer buffer, int index) {
+        return (int) INT_BE.get(buffer, index);
+    }
+
+    public static long u32LE(ByteBuffer buffer, int index) {
+        return Integer.toUnsignedLong(i32LE(buffer, index));
+    }
+
+    /**
+     * Reads a four-character code at an absolute index.
+     *
+     * @param  buffer  the buffer holding the tag.
+     * @param  index   the index of the tag's first character.
+     * @return the tag, with the first character in the most significant byte.
+     */
+    public static int fourCC(ByteBuffer buffer, int index) {
+        return i32BE(buffer, index);
+    }
+
+    /**
+     * Encodes a tag such as {@code "RIFF"} or {@code "fmt "} for comparison with read tags.
+     *
+     * @param  tag  exactly four ASCII characters.
+     * @return the tag as read by {@link #fourCC()}.
+     */
+    public static int fourCC(String tag) {
+        if (tag.length() != 4) {
+            throw new IllegalArgumentException("A FourCC has four characters: \"" + tag + "\"");
+        }
+        return tag.charAt(0) << 24 | (tag.charAt(1) & 0xFF) << 16 | (tag.charAt(2) & 0xFF) << 8 | (tag.charAt(3) & 0xFF);
+    }
+
+    /**
+     * Decodes a tag back into its characters, for messages and chunk ids.
+     *
+     * @param  fourCC  a tag read by {@link #fourCC()}.
+     * @return the four characters.
+     */
+    public static String fourCCToString(int fourCC) {
+        byte[] chars = {(byte) (fourCC >>> 24), (byte) (fourCC >>> 16), (byte) (fourCC >>> 8), (byte) fourCC};
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+}
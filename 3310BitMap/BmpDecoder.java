@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Decodes the pixel array of a BMP file into a {@link PixelRaster}.
+ * <p>
+ * Every pixel format has its own row loop, picked once per file: palette lookups for 1-, 4-
+ * and 8-bit images, a 64K-entry lookup table built from the colour masks for 16-bit images,
+ * byte shuffles for 24-bit and single little-endian loads for 32-bit images, with a
+ * per-channel mask path only for unusual 32-bit layouts. RLE8 and RLE4 images are expanded
+ * run by run with bulk fills. Uncompressed pixel data is memory-mapped and copied out one
+ * row at a time into a single reused buffer.
+ * <p>
+ * Rasters are always in bottom-up file row order, so top-down files are flipped while
+ * decoding.
+ */
+public class BmpDecoder {
+
+    /** Largest region mapped at once; big images are mapped in several windows of whole rows. */
+    private static final long MAX_MAP_BYTES = 1L << 30;
+
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Converts one stored row into packed pixels. */
+    interface RowDecoder {
+        /**
+         * @param  row        the stored row bytes.
+         * @param  width      the number of pixels in the row.
+         * @param  dst        the array receiving the packed pixels.
+         * @param  dstOffset  the index in {@code dst} of the row's first pixel.
+         */
+        void decode(byte[] row, int width, int[] dst, int dstOffset);
+    }
+
+    /**
+     * Returns the number of bytes a stored BMP row occupies, including the padding
+     * that rounds every row up to a multiple of four bytes.
+     *
+     * @param  width      the image width in pixels.
+     * @param  bitsPerPx  the number of bits used per pixel.
+     * @return the padded row size in bytes.
+     */
+    public static int rowSize(int width, int bitsPerPx) {
+        return (int) (((long) width * bitsPerPx + 31) / 32 * 4);
+    }
+
+    /**
+     * Decodes the image described by {@code header}, in any bit depth and compression
+     * a BMP file can use except embedded JPEG and PNG.
+     *
+     * @param  channel  the channel of the open BMP file.
+     * @param  header   the file's header.
+     * @return a raster in bottom-up row order.
+     * @throws IOException if the file is truncated or uses an unsupported format.
+     */
+    public static PixelRaster decode(FileChannel channel, BmpHeader header) throws IOException {
+        switch (header.compression) {
+            case BmpHeader.BI_RLE8:
+            case BmpHeader.BI_RLE4:
+                return decodeRle(channel, header);
+            case BmpHeader.BI_RGB:
+            case BmpHeader.BI_BITFIELDS:
+            case BmpHeader.BI_ALPHABITFIELDS:
+                break;
+            default:
+                throw new IOException("Unsupported BMP compression: " + header.compression);
+        }
+        PixelRaster raster = decodeRows(channel, header.firstPxAddr, header.width, header.height, header.topDown,
+                header.bitsPerPx, rowDecoder(channel, header));
+        if (header.bitsPerPx == 32 && header.compression == BmpHeader.BI_RGB) {
+            fixUnusedAlpha(raster.getPixels());
+        }
+        return raster;
+    }
+
+    /**
+     * Returns the row loop for an uncompressed image.
+     *
+     * @param  channel  the channel of the open BMP file, read for the palette.
+     * @param  header   the file's header, with compression {@code BI_RGB} or a bitfields variant.
+     * @return the decoder for one stored row.
+     * @throws IOException if the bit depth is not supported or the palette cannot be read.
+     */
+    static RowDecoder rowDecoder(FileChannel channel, BmpHeader header) throws IOException {
+        switch (header.bitsPerPx) {
+            case 1: {
+                int[] palette = readPalette(channel, header);
+                return (row, width, dst, dstOffset) -> decodeIndexed1(row, width, palette, dst, dstOffset);
+            }
+            case 4: {
+                int[] palette = readPalette(channel, header);
+                return (row, width, dst, dstOffset) -> decodeIndexed4(row, width, palette, dst, dstOffset);
+            }
+            case 8: {
+                int[] palette = readPalette(channel, header);
+                return (row, width, dst, dstOffset) -> {
+                    for (int x = 0; x < width; x++) {
+                        dst[dstOffset + x] = palette[row[x] & 0xFF];
+                    }
+                };
+            }
+            case 16: {
+                int[] lut = maskTable(header);
+                return (row, width, dst, dstOffset) -> {
+                    for (int x = 0; x < width; x++) {
+                        dst[dstOffset + x] = lut[(short) SHORT_LE.get(row, x << 1) & 0xFFFF];
+                    }
+                };
+            }
+            case 24:
+                return (row, width, dst, dstOffset) -> decodeRow(row, 3, width, dst, dstOffset);
+            case 32:
+                return rowDecoder32(header);
+            default:
+                throw new IOException("Unsupported bit depth: " + header.bitsPerPx);
+        }
+    }
+
+    private static RowDecoder rowDecoder32(BmpHeader header) {
+        if (header.compression == BmpHeader.BI_RGB) {
+            // Keep the fourth byte; decode() makes the image opaque if it turns out to be unused
+            return (row, width, dst, dstOffset) -> {
+                for (int x = 0; x < width; x++) {
+                    dst[dstOffset + x] = (int) INT_LE.get(row, x << 2);
+                }
+            };
+        }
+        boolean standard = header.redMask == 0xFF0000 && header.greenMask == 0xFF00 && header.blueMask == 0xFF;
+        if (standard && (header.alphaMask == 0 || header.alphaMask == 0xFF000000)) {
+            // B,G,R,A read little-endian is already a packed ARGB pixel
+            int opaque = header.alphaMask == 0 ? 0xFF000000 : 0;
+            return (row, width, dst, dstOffset) -> {
+                for (int x = 0; x < width; x++) {
+                    dst[dstOffset + x] = (int) INT_LE.get(row, x << 2) | opaque;
+                }
+            };
+        }
+        MaskField red = new MaskField(header.redMask);
+        MaskField green = new MaskField(header.greenMask);
+        MaskField blue = new MaskField(header.blueMask);
+        MaskField alpha = header.alphaMask == 0 ? null : new MaskField(header.alphaMask);
+        return (row, width, dst, dstOffset) -> {
+            for (int x = 0; x < width; x++) {
+                int pixel = (int) INT_LE.get(row, x << 2);
+                int a = alpha == null ? 0xFF : alpha.get(pixel);
+                dst[dstOffset + x] = a << 24 | red.get(pixel) << 16 | green.get(pixel) << 8 | blue.get(pixel);
+            }
+        };
+    }
+
+    /**
+     * Maps the pixel array in windows of whole rows and decodes every row into a new raster.
+     */
+    private static PixelRaster decodeRows(FileChannel channel, long firstPxAddr, int width, int height, boolean topDown,
+                                          int bitsPerPx, RowDecoder decoder) throws IOException {
+        int rowSize = rowSize(width, bitsPerPx);
+        if (firstPxAddr + (long) rowSize * height > channel.size()) {
+            throw new IOException("Pixel data extends past the end of the file");
+        }
+
+        PixelRaster raster = new PixelRaster(width, height);
+        int[] packed = raster.getPixels();
+        byte[] row = new byte[rowSize];
+        int rowsPerMap = (int) Math.max(1, Math.min(height, MAX_MAP_BYTES / rowSize));
+
+        for (int firstRow = 0; firstRow < height; firstRow += rowsPerMap) {
+            int rows = Math.min(rowsPerMap, height - firstRow);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY,
+                    firstPxAddr + (long) firstRow * rowSize, (long) rows * rowSize);
+            for (int y = firstRow; y < firstRow + rows; y++) {
+                map.get(row);
+                int rasterRow = topDown ? height - 1 - y : y;
+                decoder.decode(row, width, packed, rasterRow * width);
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Packs one stored row of B,G,R(,X) pixels.
+     *
+     * @param  row         the stored row bytes.
+     * @param  bytesPerPx  the number of bytes per pixel, 3 or 4.
+     * @param  width       the number of pixels in the row.
+     * @param  dst         the array receiving the packed pixels.
+     * @param  dstOffset   the index in {@code dst} of the row's first pixel.
+     */
+    static void decodeRow(byte[] row, int bytesPerPx, int width, int[] dst, int dstOffset) {
+        for (int x = 0, in = 0; x < width; x++, in += bytesPerPx) {
+            dst[dstOffset + x] = 0xFF000000
+                    | (row[in + 2] & 0xFF) << 16
+                    | (row[in + 1] & 0xFF) << 8
+                    | (row[in] & 0xFF);
+        }
+    }
+
+    private static void decodeIndexed1(byte[] row, int width, int[] palette, int[] dst, int dstOffset) {
+        int x = 0;
+        for (int in = 0; x + 8 <= width; x += 8, in++) {
+            int bits = row[in];
+            int out = dstOffset + x;
+            dst[out] = palette[bits >> 7 & 1];
+            dst[out + 1] = palette[bits >> 6 & 1];
+            dst[out + 2] = palette[bits >> 5 & 1];
+            dst[out + 3] = palette[bits >> 4 & 1];
+            dst[out + 4] = palette[bits >> 3 & 1];
+            dst[out + 5] = palette[bits >> 2 & 1];
+            dst[out + 6] = palette[bits >> 1 & 1];
+            dst[out + 7] = palette[bits & 1];
+        }
+        for (; x < width; x++) {
+            dst[dstOffset + x] = palette[row[x >> 3] >> (7 - (x & 7)) & 1];
+        }
+    }
+
+    private static void decodeIndexed4(byte[] row, int width, int[] palette, int[] dst, int dstOffset) {
+        int x = 0;
+        for (int in = 0; x + 2 <= width; x += 2, in++) {
+            int pair = row[in];
+            dst[dstOffset + x] = palette[pair >> 4 & 0xF];
+            dst[dstOffset + x + 1] = palette[pair & 0xF];
+        }
+        if (x < width) {
+            dst[dstOffset + x] = palette[row[x >> 1] >> 4 & 0xF];
+        }
+    }
+
+    /**
+     * Reads the colour table. The result always has 256 opaque entries, so any index a
+     * corrupt file stores maps to black instead of failing.
+     */
+    private static int[] readPalette(FileChannel channel, BmpHeader header) throws IOException {
+        int entrySize = header.paletteEntrySize;
+        ByteBuffer table = ByteBuffer.allocate(header.colorsUsed * entrySize);
+        long position = header.paletteOffset;
+        while (table.hasRemaining()) {
+            if (channel.read(table, position + table.position()) < 0) {
+                throw new IOException("Truncated colour table");
+            }
+        }
+        int[] palette = new int[256];
+        Arrays.fill(palette, PixelRaster.OPAQUE_BLACK);
+        for (int i = 0; i < header.colorsUsed; i++) {
+            int entry = i * entrySize;
+            palette[i] = PixelRaster.pack(table.get(entry + 2) & 0xFF, table.get(entry + 1) & 0xFF, table.get(entry) & 0xFF);
+        }
+        return palette;
+    }
+
+    /**
+     * Builds a table from every 16-bit pixel value to its packed colour.
+     */
+    private static int[] maskTable(BmpHeader header) {
+        MaskField red = new MaskField(header.redMask);
+        MaskField green = new MaskField(header.greenMask);
+        MaskField blue = new MaskField(header.blueMask);
+        MaskField alpha = header.alphaMask == 0 ? null : new MaskField(header.alphaMask);
+        int[] lut = new int[1 << 16];
+        for (int pixel = 0; pixel < lut.length; pixel++) {
+            int a = alpha == null ? 0xFF : alpha.get(pixel);
+            lut[pixel] = a << 24 | red.get(pixel) << 16 | green.get(pixel) << 8 | blue.get(pixel);
+        }
+        return lut;
+    }
+
+    /**
+     * Makes the raster opaque if no pixel has a non-zero alpha. Most writers leave the fourth
+     * byte of uncompressed 32-bit pixels at zero, but some store real alpha there.
+     */
+    private static void fixUnusedAlpha(int[] pixels) {
+        int alpha = 0;
+        for (int pixel : pixels) {
+            alpha |= pixel;
+        }
+        if ((alpha & 0xFF000000) == 0) {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] |= 0xFF000000;
+            }
+        }
+    }
+
+    /**
+     * Expands an RLE8 or RLE4 image. Pixels the encoding skips with delta or end-of-line codes
+     * stay {@link PixelRaster#OPAQUE_BLACK}; runs that overflow a row are clipped to the image.
+     */
+    private static PixelRaster decodeRle(FileChannel channel, BmpHeader header) throws IOException {
+        if (header.topDown) {
+            throw new IOException("RLE compressed BMP files cannot be top-down");
+        }
+        boolean rle4 = header.compression == BmpHeader.BI_RLE4;
+        if (header.bitsPerPx != (rle4 ? 4 : 8)) {
+            throw new IOException("RLE" + (rle4 ? 4 : 8) + " with " + header.bitsPerPx + " bits per pixel");
+        }
+        long size = channel.size() - header.firstPxAddr;
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid RLE data size: " + size);
+        }
+        int[] palette = readPalette(channel, header);
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, header.firstPxAddr, size);
+
+        int width = header.width;
+        int height = header.height;
+        PixelRaster raster = new PixelRaster(width, height);
+        int[] pixels = raster.getPixels();
+        Arrays.fill(pixels, PixelRaster.OPAQUE_BLACK);
+
+        int x = 0;
+        int y = 0;
+        while (y < height && in.remaining() >= 2) {
+            int count = in.get() & 0xFF;
+            int value = in.get() & 0xFF;
+            if (count > 0) {
+                // Encoded run: one index for RLE8, two alternating indices for RLE4
+                int n = Math.min(count, width - x);
+                int start = y * width + x;
+                if (!rle4) {
+                    Arrays.fill(pixels, start, start + Math.max(n, 0), palette[value]);
+                } else {
+                    int first = palette[value >> 4];
+                    int second = palette[value & 0xF];
+                    for (int i = 0; i < n; i++) {
+                        pixels[start + i] = (i & 1) == 0 ? first : second;
+                    }
+                }
+                x += count;
+            } else if (value == 0) {
+                x = 0;
+                y++;
+            } else if (value == 1) {
+                break;
+            } else if (value == 2) {
+                if (in.remaining() < 2) {
+                    break;
+                }
+                x += in.get() & 0xFF;
+                y += in.get() & 0xFF;
+            } else {
+                // Absolute run of literal indices, padded to a 16-bit boundary
+                int bytes = rle4 ? (value + 1) >> 1 : value;
+                if (in.remaining() < bytes) {
+                    break;
+                }
+                int start = y * width + x;
+                int n = Math.min(value, width - x);
+                int base = in.position();
+                for (int i = 0; i < n; i++) {
+                    int index = rle4 ? in.get(base + (i >> 1)) >> ((i & 1) == 0 ? 4 : 0) & 0xF : in.get(base + i) & 0xFF;
+                    pixels[start + i] = palette[index];
+                }
+                in.position(base + bytes + (bytes & 1));
+                x += value;
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * One colour channel of a bitfields pixel: the mask, its position and a table that scales
+     * the extracted value to 0..255.
+     */
+    private static final class MaskField {
+        private final int mask;
+        private final int shift;
+        private final int bits;
+        private final int[] scale;
+
+        MaskField(int mask) {
+            this.mask = mask;
+            this.shift = mask == 0 ? 0 : Integer.numberOfTrailingZeros(mask);
+            // The span from the lowest to the highest set bit, so a gap in a corrupt mask cannot index past the table
+            this.bits = mask == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(mask) - shift;
+            if (bits <= 8) {
+                int max = (1 << bits) - 1;
+                scale = new int[1 << bits];
+                for (int v = 1; v <= max; v++) {
+                    scale[v] = (v * 255 + max / 2) / max;
+                }
+            } else {
+                scale = null;
+            }
+        }
+
+        int get(int pixel) {
+            int value = (pixel & mask) >>> shift;
+            return scale == null ? value >>> (bits - 8) : scale[value];
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The fields of a BMP file header and DIB header that the decoders need.
+ * <p>
+ * OS/2 BITMAPCOREHEADERs and Windows BITMAPINFOHEADERs up to BITMAPV5HEADER are understood.
+ * Colour masks are resolved here whichever way the file stores them, inside a V2+ header or
+ * as the DWORDs following a BITMAPINFOHEADER, and the defaults for uncompressed 16- and 32-bit
+ * pixels are filled in, so decoders always find the masks to apply in the mask fields.
+ */
+public class BmpHeader {
+
+    /** Size of the BITMAPFILEHEADER that precedes the DIB header. */
+    static final int FILE_HEADER_SIZE = 14;
+
+    /** Size of an OS/2 BITMAPCOREHEADER, which has 16-bit dimensions and no compression field. */
+    static final int CORE_HEADER_SIZE = 12;
+
+    /** Size of a BITMAPINFOHEADER, the smallest DIB header that carries a compression field. */
+    static final int INFO_HEADER_SIZE = 40;
+
+    /** Size of a BITMAPV5HEADER, the largest DIB header. */
+    static final int V5_HEADER_SIZE = 124;
+
+    public static final int BI_RGB = 0;
+    public static final int BI_RLE8 = 1;
+    public static final int BI_RLE4 = 2;
+    public static final int BI_BITFIELDS = 3;
+    public static final int BI_ALPHABITFIELDS = 6;
+
+    /** The two-character signature at the start of the file, always {@code "BM"} once parsed. */
+    public final String magic;
+
+    public final int firstPxAddr;
+    public final int dibHdrSize;
+    public final int width;
+
+    /** The number of rows, always positive; see {@link #topDown}. */
+    public final int height;
+
+    /** True if the first stored row is the top scanline, which the file marks with a negative height. */
+    public final boolean topDown;
+
+    public final int bitsPerPx;
+    public final int compression;
+
+    /** Number of palette entries stored in the file, 0 for images without a palette. */
+    public final int colorsUsed;
+
+    /** File offset of the first palette entry. */
+    public final int paletteOffset;
+
+    /** Size of a palette entry: 3 bytes (B,G,R) for core headers, otherwise 4 (B,G,R,0). */
+    public final int paletteEntrySize;
+
+    /** Bits of a 16- or 32-bit pixel holding each channel; 0 for paletted and 24-bit images. */
+    public final int redMask;
+    public final int greenMask;
+    public final int blueMask;
+
+    /** Bits of a 16- or 32-bit pixel holding alpha; 0 if the pixels carry no alpha. */
+    public final int alphaMask;
+
+    private BmpHeader(String magic, int firstPxAddr, int dibHdrSize, int width, int height, boolean topDown, int bitsPerPx,
+                      int compression, int colorsUsed, int paletteOffset, int paletteEntrySize,
+                      int redMask, int greenMask, int blueMask, int alphaMask) {
+        this.magic = magic;
+        this.firstPxAddr = firstPxAddr;
+        this.dibHdrSize = dibHdrSize;
+        this.width = width;
+        this.height = height;
+        this.topDown = topDown;
+        this.bitsPerPx = bitsPerPx;
+        this.compression = compression;
+        this.colorsUsed = colorsUsed;
+        this.paletteOffset = paletteOffset;
+        this.paletteEntrySize = paletteEntrySize;
+        this.redMask = redMask;
+        this.greenMask = greenMask;
+        this.blueMask = blueMask;
+        this.alphaMask = alphaMask;
+    }
+
+    /**
+     * Reads the headers at the start of a BMP file.
+     *
+     * @param  channel  the channel of the open file; its position is not used or changed.
+     * @return the parsed header.
+     * @throws IOException if the file is not a BMP file or its header is truncated or invalid.
+     */
+    public static BmpHeader read(FileChannel channel) throws IOException {
+        // The largest header plus the four mask DWORDs that may follow a BITMAPINFOHEADER
+        int length = (int) Math.min(FILE_HEADER_SIZE + V5_HEADER_SIZE, channel.size());
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Truncated BMP header");
+            }
+        }
+        header.flip();
+        BinaryReader reader = new BinaryReader(header);
+        if (header.limit() < FILE_HEADER_SIZE + CORE_HEADER_SIZE) {
+            throw new IOException("Not a BMP file");
+        }
+        String magic = new String(new char[] {(char) reader.u8(), (char) reader.u8()});
+        if (!magic.equals("BM")) {
+            throw new IOException("Not a BMP file");
+        }
+        int firstPxAddr = reader.skip(8).i32();
+        int dibHdrSize = reader.i32();
+
+        if (dibHdrSize == CORE_HEADER_SIZE) {
+            int width = reader.u16();
+            int height = reader.u16();
+            int bitsPerPx = reader.skip(2).u16();
+            return new BmpHeader(magic, firstPxAddr, dibHdrSize, width, height, false, bitsPerPx, BI_RGB,
+                    bitsPerPx <= 8 ? 1 << bitsPerPx : 0, FILE_HEADER_SIZE + CORE_HEADER_SIZE, 3, 0, 0, 0, 0);
+        }
+        if (dibHdrSize < INFO_HEADER_SIZE) {
+            throw new IOException("Unsupported DIB header size: " + dibHdrSize);
+        }
+        if (header.limit() < FILE_HEADER_SIZE + INFO_HEADER_SIZE) {
+            throw new IOException("Truncated BMP header");
+        }
+        int width = reader.i32();
+        int height = reader.i32();
+        int bitsPerPx = reader.skip(2).u16();
+        int compression = reader.i32();
+        int colorsUsed = reader.skip(12).i32();
+        if (width <= 0 || height == 0 || height == Integer.MIN_VALUE) {
+            throw new IOException("Invalid image size " + width + "x" + height);
+        }
+
+        // Masks live in the header from V2 (52 bytes) on, or follow a plain BITMAPINFOHEADER
+        int redMask = 0;
+        int greenMask = 0;
+        int blueMask = 0;
+        int alphaMask = 0;
+        int paletteOffset = FILE_HEADER_SIZE + dibHdrSize;
+        if (compression == BI_BITFIELDS || compression == BI_ALPHABITFIELDS) {
+            int masks = dibHdrSize > INFO_HEADER_SIZE ? FILE_HEADER_SIZE + INFO_HEADER_SIZE : paletteOffset;
+            boolean hasAlpha = compression == BI_ALPHABITFIELDS || dibHdrSize >= INFO_HEADER_SIZE + 16;
+            if (dibHdrSize == INFO_HEADER_SIZE) {
+                paletteOffset += compression == BI_ALPHABITFIELDS ? 16 : 12;
+            }
+            if (header.limit() < masks + (hasAlpha ? 16 : 12)) {
+                throw new IOException("Truncated colour masks");
+            }
+            reader.position(masks);
+            redMask = reader.i32();
+            greenMask = reader.i32();
+            blueMask = reader.i32();
+            alphaMask = hasAlpha ? reader.i32() : 0;
+        } else if (compression == BI_RGB && bitsPerPx == 16) {
+            redMask = 0x7C00;
+            greenMask = 0x03E0;
+            blueMask = 0x001F;
+        } else if (compression == BI_RGB && bitsPerPx == 32) {
+            redMask = 0xFF0000;
+            greenMask = 0xFF00;
+            blueMask = 0xFF;
+        }
+
+        if (bitsPerPx <= 8 && (colorsUsed <= 0 || colorsUsed > 1 << bitsPerPx)) {
+            colorsUsed = 1 << bitsPerPx;
+        } else if (bitsPerPx > 8) {
+            colorsUsed = 0;
+        }
+        return new BmpHeader(magic, firstPxAddr, dibHdrSize, width, Math.abs(height), height < 0, bitsPerPx, compression,
+                colorsUsed, paletteOffset, 4, redMask, greenMask, blueMask, alphaMask);
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filters a BMP file that may be larger than the heap, writing the result to another BMP file.
+ * <p>
+ * Rows are read from disk one at a time. Every stage of the {@link FilterChain} keeps only the
+ * rolling window of input rows its kernel can reach, and each row leaving the last stage is
+ * written out immediately, so peak memory is proportional to the image width times the sum
+ * of the kernel heights. Stages applied through the FFT also hold one tile's height of rows,
+ * which they filter together.
+ */
+public class BmpStreamFilter {
+
+    /**
+     * Applies {@code chain} to the image in {@code input} and writes a 24-bit BMP to {@code output}.
+     *
+     * @param  input   a bottom-up uncompressed BMP file of any bit depth.
+     * @param  output  the file to create or replace.
+     * @param  chain   the filters to apply; {@link EdgeMode#WRAP} is not supported when streaming.
+     * @throws IOException if the input cannot be read or the output cannot be written.
+     */
+    public static void filter(Path input, Path output, FilterChain chain) throws IOException {
+        List<FilterChain.Stage> stages = chain.getStages();
+        for (FilterChain.Stage stage : stages) {
+            if (stage.getEdgeMode() == EdgeMode.WRAP) {
+                throw new IllegalArgumentException("WRAP edges need the whole image and cannot be streamed");
+            }
+        }
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            BmpHeader header = BmpHeader.read(in);
+            if (header.compression == BmpHeader.BI_RLE8 || header.compression == BmpHeader.BI_RLE4 || header.topDown) {
+                throw new IOException("Only bottom-up uncompressed BMP files can be streamed");
+            }
+            BmpDecoder.RowDecoder decoder = BmpDecoder.rowDecoder(in, header);
+            int width = header.width;
+            int height = header.height;
+
+            StageWindow[] windows = new StageWindow[stages.size()];
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = new StageWindow(stages.get(i), width, height);
+            }
+
+            try (BmpWriter writer = new BmpWriter(output, width, height)) {
+                int rowSize = BmpDecoder.rowSize(width, header.bitsPerPx);
+                byte[] rowBytes = new byte[rowSize];
+                ByteBuffer rowBuffer = ByteBuffer.wrap(rowBytes);
+                int[] row = new int[width];
+                long position = header.firstPxAddr;
+
+                for (int y = 0; y < height; y++) {
+                    rowBuffer.clear();
+                    while (rowBuffer.hasRemaining()) {
+                        if (in.read(rowBuffer, position + rowBuffer.position()) < 0) {
+                            throw new IOException("Pixel data ends after " + y + " of " + height + " rows");
+                        }
+                    }
+                    position += rowSize;
+                    decoder.decode(rowBytes, width, row, 0);
+                    feed(windows, 0, row, 0, writer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes the row at {@code offset} into stage {@code index} and forwards every row that
+     * stage can now produce.
+     */
+    private static void feed(StageWindow[] windows, int index, int[] row, int offset, BmpWriter writer)
+            throws IOException {
+        if (index == windows.length) {
+            writer.writeRow(row, offset);
+            return;
+        }
+        StageWindow window = windows[index];
+        window.push(row, offset);
+        while (window.canEmit()) {
+            int count = window.emit();
+            int[] output = window.getOutput();
+            for (int i = 0; i < count; i++) {
+                feed(windows, index + 1, output, i * window.width, writer);
+            }
+        }
+    }
+
+    /**
+     * The rows of one stage's input that its kernel can still reach. For a kernel applied as
+     * two 1D passes the window holds each row's horizontal sums instead of its pixels, so
+     * every input row goes through the horizontal pass once and an output row costs only the
+     * vertical pass. A kernel applied through the FFT is emitted a tile's height of rows at a
+     * time, so each transform is fully used.
+     */
+    private static class StageWindow {
+        private final ConvolutionKernel kernel;
+        private final EdgeMode edgeMode;
+        private final int radius;
+        private final int width;
+        private final int height;
+
+        // Input rows [firstRow, firstRow + rowCount) are stored contiguously from the start of
+        // rows, or of the three sum arrays when separable is set
+        private final int[] rows;
+        private final Convolution.SeparablePass separable;
+        private final int[] red;
+        private final int[] green;
+        private final int[] blue;
+        private final int[] rowBase;
+        private final int capacity;
+        private final int batch;
+        private int firstRow;
+        private int rowCount;
+
+        private final int[] output;
+        private int nextOutput;
+
+        StageWindow(FilterChain.Stage stage, int width, int height) {
+            this.kernel = stage.getKernel();
+            this.edgeMode = stage.getEdgeMode();
+            this.radius = kernel.getRadius();
+            this.width = width;
+            this.height = height;
+            this.batch = Convolution.bandAlignment(kernel);
+            // Twice the window so old rows are compacted away only once per window's worth of rows
+            this.capacity = 2 * (batch + 2 * radius);
+            if (Convolution.streamsSeparably(kernel)) {
+                this.rows = null;
+                this.separable = new Convolution.SeparablePass(kernel, edgeMode, width);
+                this.red = new int[capacity * width];
+                this.green = new int[capacity * width];
+                this.blue = new int[capacity * width];
+                this.rowBase = new int[kernel.getSize()];
+            } else {
+                this.rows = new int[capacity * width];
+                this.separable = null;
+                this.red = null;
+                this.green = null;
+                this.blue = null;
+                this.rowBase = null;
+            }
+            this.output = new int[batch * width];
+        }
+
+        void push(int[] row, int offset) {
+            if (rowCount == capacity) {
+                // Keep only the rows the next output still needs
+                int keepFrom = Math.max(firstRow, nextOutput - radius);
+                int drop = keepFrom - firstRow;
+                int keep = (rowCount - drop) * width;
+                if (separable == null) {
+                    System.arraycopy(rows, drop * width, rows, 0, keep);
+                } else {
+                    System.arraycopy(red, drop * width, red, 0, keep);
+                    System.arraycopy(green, drop * width, green, 0, keep);
+                    System.arraycopy(blue, drop * width, blue, 0, keep);
+                }
+                firstRow = keepFrom;
+                rowCount -= drop;
+            }
+            if (separable == null) {
+                System.arraycopy(row, offset, rows, rowCount * width, width);
+            } else {
+                separable.filterRow(row, offset, red, green, blue, rowCount * width);
+            }
+            rowCount++;
+        }
+
+        boolean canEmit() {
+            if (nextOutput >= height) {
+                return false;
+            }
+            int needed = Math.min(height - 1, nextOutput + batchRows() - 1 + radius);
+            return firstRow + rowCount - 1 >= needed;
+        }
+
+        /** The number of rows the next {@link #emit()} produces: a batch, or what the image has left. */
+        private int batchRows() {
+            return Math.min(batch, height - nextOutput);
+        }
+
+        /**
+         * Filters the next rows into the output buffer.
+         *
+         * @return the number of rows written, stored one after another from the start of {@link #getOutput()}.
+         */
+        int emit() {
+            int count = batchRows();
+            if (separable == null) {
+                Convolution.convolveRows(rows, width, firstRow, width, height, kernel, edgeMode,
+                        output, width, nextOutput, nextOutput, nextOutput + count);
+            } else {
+                emitSeparable(nextOutput);
+            }
+            nextOutput += count;
+            return count;
+        }
+
+        int[] getOutput() {
+            return output;
+        }
+
+        private void emitSeparable(int y) {
+            for (int ky = 0; ky < rowBase.length; ky++) {
+                int sy = edgeMode.resolve(y + ky - radius, height);
+                if (sy < 0) {
+                    Arrays.fill(output, PixelRaster.OPAQUE_BLACK);
+                    return;
+                }
+                rowBase[ky] = (sy - firstRow) * width;
+            }
+            separable.combineRows(red, green, blue, rowBase, output, 0);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an uncompressed 24- or 32-bit BMP file.
+ * <p>
+ * Rows are written in file order, bottom scanline first, which is the row order of
+ * {@link PixelRaster}. They are encoded into a large direct buffer that is flushed to the
+ * file channel whenever it fills up. A packed {@code 0xAARRGGBB} pixel stored little-endian
+ * is exactly a 32-bit B,G,R,A BMP pixel, so 32-bit rows are bulk-copied into the buffer
+ * without touching individual pixels; 24-bit rows are packed four pixels to three words.
+ */
+public class BmpWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final IntBuffer words;
+    private final int width;
+    private final int height;
+    private final int bitsPerPx;
+    private final int rowSize;
+    private int rowsWritten;
+
+    public BmpWriter(Path path, int width, int height) throws IOException {
+        this(path, width, height, 24);
+    }
+
+    /**
+     * Creates the file and writes its headers.
+     *
+     * @param  path       the file to create or replace.
+     * @param  width      the image width in pixels.
+     * @param  height     the number of rows that will be written.
+     * @param  bitsPerPx  24 or 32.
+     * @throws IOException if the file cannot be created.
+     */
+    public BmpWriter(Path path, int width, int height, int bitsPerPx) throws IOException {
+        if (bitsPerPx != 24 && bitsPerPx != 32) {
+            throw new IllegalArgumentException("Only 24- and 32-bit BMP files can be written");
+        }
+        this.width = width;
+        this.height = height;
+        this.bitsPerPx = bitsPerPx;
+        this.rowSize = BmpDecoder.rowSize(width, bitsPerPx);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, rowSize)).order(ByteOrder.LITTLE_ENDIAN);
+        this.words = buffer.asIntBuffer();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        try {
+            int headerSize = BmpHeader.FILE_HEADER_SIZE + BmpHeader.INFO_HEADER_SIZE;
+            long imageSize = (long) rowSize * height;
+            buffer.put((byte) 'B').put((byte) 'M');
+            buffer.putInt((int) (headerSize + imageSize));
+            buffer.putInt(0);
+            buffer.putInt(headerSize);
+
+            buffer.putInt(BmpHeader.INFO_HEADER_SIZE);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putShort((short) 1);
+            buffer.putShort((short) bitsPerPx);
+            buffer.putInt(0);
+            buffer.putInt((int) imageSize);
+            buffer.putInt(2835);
+            buffer.putInt(2835);
+            buffer.putInt(0);
+            buffer.putInt(0);
+
+            // Start the pixel data at the beginning of the buffer so 32-bit rows stay word aligned
+            flush();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes a whole raster to a new BMP file.
+     *
+     * @param  raster     the image, in file row order.
+     * @param  path       the file to create or replace.
+     * @param  bitsPerPx  24 or 32.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(PixelRaster raster, Path path, int bitsPerPx) throws IOException {
+        try (BmpWriter writer = new BmpWriter(path, raster.getWidth(), raster.getHeight(), bitsPerPx)) {
+            writer.writeRows(raster.getPixels(), 0, raster.getStride(), raster.getHeight());
+        }
+    }
+
+    /**
+     * Appends one row of packed pixels.
+     *
+     * @param  pixels  the array holding the row.
+     * @param  offset  the index of the row's first pixel.
+     * @throws IOException if the row cannot be written or all rows have already been written.
+     */
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        writeRows(pixels, offset, width, 1);
+    }
+
+    /**
+     * Appends several rows of packed pixels.
+     *
+     * @param  pixels  the array holding the rows.
+     * @param  offset  the index of the first row's first pixel.
+     * @param  stride  the distance between the starts of consecutive rows in {@code pixels}.
+     * @param  rows    the number of rows to write.
+     * @throws IOException if the rows cannot be written or would exceed the image height.
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+        if (rowsWritten + rows > height) {
+            throw new IOException("Image has only " + height + " rows");
+        }
+        for (int r = 0; r < rows; r++, offset += stride) {
+            if (buffer.remaining() < rowSize) {
+                flush();
+            }
+            if (bitsPerPx == 32) {
+                // The row is word aligned, so bulk-copy it through the int view of the buffer
+                words.position(buffer.position() >> 2);
+                words.put(pixels, offset, width);
+                buffer.position(buffer.position() + rowSize);
+            } else {
+                putRow24(pixels, offset);
+            }
+            rowsWritten++;
+        }
+    }
+
+    private void putRow24(int[] pixels, int offset) {
+        int x = 0;
+        // Four B,G,R pixels fill exactly three little-endian words
+        for (; x + 4 <= width; x += 4) {
+            int p0 = pixels[offset + x];
+            int p1 = pixels[offset + x + 1];
+            int p2 = pixels[offset + x + 2];
+            int p3 = pixels[offset + x + 3];
+            buffer.putInt((p0 & 0xFFFFFF) | (p1 << 24));
+            buffer.putInt(((p1 >> 8) & 0xFFFF) | (p2 << 16));
+            buffer.putInt(((p2 >> 16) & 0xFF) | (p3 << 8));
+        }
+        for (; x < width; x++) {
+            int pixel = pixels[offset + x];
+            buffer.put((byte) pixel).put((byte) (pixel >> 8)).put((byte) (pixel >> 16));
+        }
+        for (int pad = width * 3; pad < rowSize; pad++) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if (rowsWritten != height) {
+                throw new IOException("Only " + rowsWritten + " of " + height + " rows were written");
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Mean filter over a {@code (2 * radius + 1)} square whose cost per pixel does not depend on the radius.
+ * <p>
+ * A horizontal pass slides a running sum along every row, adding the pixel that enters the
+ * window and subtracting the one that leaves it. A vertical pass does the same down the
+ * columns of those row sums, one output row at a time. Both passes run on a {@link ForkJoinPool}.
+ * <p>
+ * {@link Convolution} also applies the kernels {@link ConvolutionKernel#box(int)} builds this
+ * way, band by band through {@link RowFilter}, so filter chains and pipelines get the same
+ * constant cost.
+ */
+public class BoxBlur {
+
+    /** Bands with fewer pixels than this are blurred on the current thread. */
+    private static final int MIN_BAND_PIXELS = 1 << 15;
+
+    public static PixelRaster apply(PixelRaster image, int radius, EdgeMode edgeMode) {
+        return apply(image, radius, edgeMode, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Blurs {@code image} with a box of the given radius.
+     *
+     * @param  image     the source image; it is not modified.
+     * @param  radius    the number of pixels on each side of the centre, at least 0.
+     * @param  edgeMode  how pixels outside the image are handled.
+     * @param  pool      the pool that runs the row bands.
+     * @return a new raster holding the blurred image.
+     */
+    public static PixelRaster apply(PixelRaster image, int radius, EdgeMode edgeMode, ForkJoinPool pool) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative blur radius: " + radius);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        PixelRaster output = image.createCompatible();
+        int[] red = new int[width * height];
+        int[] green = new int[width * height];
+        int[] blue = new int[width * height];
+
+        pool.invoke(new BandTask(width, height, (y0, y1) ->
+                horizontalPass(image, radius, edgeMode, red, green, blue, y0, y1)));
+        pool.invoke(new BandTask(width, height, (y0, y1) ->
+                verticalPass(red, green, blue, width, height, radius, edgeMode, output, y0, y1)));
+        return output;
+    }
+
+    /** Resolves a coordinate for the running sums; {@link EdgeMode#SKIP} borders are blackened afterwards, so they clamp here. */
+    private static int resolve(EdgeMode edgeMode, int coord, int length) {
+        return edgeMode == EdgeMode.SKIP ? EdgeMode.CLAMP.resolve(coord, length) : edgeMode.resolve(coord, length);
+    }
+
+    private static void horizontalPass(PixelRaster image, int radius, EdgeMode edgeMode,
+                                       int[] red, int[] green, int[] blue, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            filterRow(image.getPixels(), y * image.getStride(), image.getWidth(), radius, edgeMode,
+                    red, green, blue, y * image.getWidth());
+        }
+    }
+
+    /**
+     * Writes the running horizontal sums of the source row at {@code base} to the three
+     * channel arrays from index {@code out}.
+     */
+    private static void filterRow(int[] src, int base, int width, int radius, EdgeMode edgeMode,
+                                  int[] red, int[] green, int[] blue, int out) {
+        int redSum = 0, greenSum = 0, blueSum = 0;
+
+        // Prime the window centred on x = 0
+        for (int kx = -radius; kx <= radius; kx++) {
+            int pixel = src[base + resolve(edgeMode, kx, width)];
+            redSum += (pixel >> 16) & 0xFF;
+            greenSum += (pixel >> 8) & 0xFF;
+            blueSum += pixel & 0xFF;
+        }
+
+        for (int x = 0; x < width; x++) {
+            red[out + x] = redSum;
+            green[out + x] = greenSum;
+            blue[out + x] = blueSum;
+
+            // Slide the window one pixel to the right
+            int entering = src[base + resolve(edgeMode, x + radius + 1, width)];
+            int leaving = src[base + resolve(edgeMode, x - radius, width)];
+            redSum += ((entering >> 16) & 0xFF) - ((leaving >> 16) & 0xFF);
+            greenSum += ((entering >> 8) & 0xFF) - ((leaving >> 8) & 0xFF);
+            blueSum += (entering & 0xFF) - (leaving & 0xFF);
+        }
+    }
+
+    private static void verticalPass(int[] red, int[] green, int[] blue, int width, int height, int radius,
+                                     EdgeMode edgeMode, PixelRaster output, int y0, int y1) {
+        int[] dst = output.getPixels();
+        int dstStride = output.getStride();
+        int[] redAcc = new int[width];
+        int[] greenAcc = new int[width];
+        int[] blueAcc = new int[width];
+
+        // Prime the column sums for the window centred on the first row of the band
+        for (int ky = y0 - radius; ky <= y0 + radius; ky++) {
+            addRow(red, green, blue, resolve(edgeMode, ky, height) * width, width, redAcc, greenAcc, blueAcc, 1);
+        }
+
+        for (int y = y0; y < y1; y++) {
+            emitRow(redAcc, greenAcc, blueAcc, width, height, radius, edgeMode, y, dst, y * dstStride);
+
+            // Slide the window one row down
+            if (y + 1 < y1) {
+                addRow(red, green, blue, resolve(edgeMode, y + radius + 1, height) * width, width,
+                        redAcc, greenAcc, blueAcc, 1);
+                addRow(red, green, blue, resolve(edgeMode, y - radius, height) * width, width,
+                        redAcc, greenAcc, blueAcc, -1);
+            }
+        }
+    }
+
+    private static void addRow(int[] red, int[] green, int[] blue, int offset, int width,
+                               int[] redAcc, int[] greenAcc, int[] blueAcc, int sign) {
+        for (int x = 0; x < width; x++) {
+            redAcc[x] += sign * red[offset + x];
+            greenAcc[x] += sign * green[offset + x];
+            blueAcc[x] += sign * blue[offset + x];
+        }
+    }
+
+    /**
+     * Writes one output row from the column sums, blackening the {@link EdgeMode#SKIP} borders.
+     */
+    private static void emitRow(int[] redAcc, int[] greenAcc, int[] blueAcc, int width, int height, int radius,
+                                EdgeMode edgeMode, int y, int[] dst, int out) {
+        int area = (2 * radius + 1) * (2 * radius + 1);
+        if (edgeMode == EdgeMode.SKIP && (y < radius || y >= height - radius)) {
+            Arrays.fill(dst, out, out + width, PixelRaster.OPAQUE_BLACK);
+            return;
+        }
+        for (int x = 0; x < width; x++) {
+            if (edgeMode == EdgeMode.SKIP && (x < radius || x >= width - radius)) {
+                dst[out + x] = PixelRaster.OPAQUE_BLACK;
+            } else {
+                dst[out + x] = PixelRaster.pack(redAcc[x] / area, greenAcc[x] / area, blueAcc[x] / area);
+            }
+        }
+    }
+
+    /**
+     * Applies box kernels for {@link Convolution#convolveRows}: the rows a band reaches get
+     * their running sums once, then the band slides a column window down them.
+     */
+    static final class RowFilter implements Convolution.RowKernel {
+        private final int minSize;
+
+        /**
+         * @param  minSize  the smallest box worth the running sums.
+         */
+        RowFilter(int minSize) {
+            this.minSize = minSize;
+        }
+
+        @Override
+        public boolean supports(ConvolutionKernel kernel) {
+            return kernel.getSize() >= minSize && kernel.isBox();
+        }
+
+        @Override
+        public void convolveRows(int[] src, int srcStride, int srcFirstRow, int width, int height,
+                                 ConvolutionKernel kernel, EdgeMode edgeMode,
+                                 int[] dst, int dstStride, int dstFirstRow, int y0, int y1) {
+            int radius = kernel.getRadius();
+
+            // Horizontal sums of rows [y0 - radius, y1 + radius), one slot per row even where they resolve alike
+            int firstRow = y0 - radius;
+            int rows = y1 - y0 + 2 * radius;
+            int[] red = new int[rows * width];
+            int[] green = new int[rows * width];
+            int[] blue = new int[rows * width];
+            for (int r = 0; r < rows; r++) {
+                int sy = resolve(edgeMode, firstRow + r, height);
+                filterRow(src, (sy - srcFirstRow) * srcStride, width, radius, edgeMode, red, green, blue, r * width);
+            }
+
+            int[] redAcc = new int[width];
+            int[] greenAcc = new int[width];
+            int[] blueAcc = new int[width];
+            for (int r = 0; r < 2 * radius + 1; r++) {
+                addRow(red, green, blue, r * width, width, redAcc, greenAcc, blueAcc, 1);
+            }
+            for (int y = y0; y < y1; y++) {
+                emitRow(redAcc, greenAcc, blueAcc, width, height, radius, edgeMode, y,
+                        dst, (y - dstFirstRow) * dstStride);
+                if (y + 1 < y1) {
+                    addRow(red, green, blue, (y + radius + 1 - firstRow) * width, width, redAcc, greenAcc, blueAcc, 1);
+                    addRow(red, green, blue, (y - radius - firstRow) * width, width, redAcc, greenAcc, blueAcc, -1);
+                }
+            }
+        }
+    }
+
+    private interface RowRange {
+        void run(int y0, int y1);
+    }
+
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int width;
+        private final RowRange body;
+        private final int y0;
+        private final int y1;
+
+        BandTask(int width, int height, RowRange body) {
+            this(width, body, 0, height);
+        }
+
+        private BandTask(int width, RowRange body, int y0, int y1) {
+            this.width = width;
+            this.body = body;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) (y1 - y0) * width <= MIN_BAND_PIXELS || y1 - y0 <= 1) {
+                body.run(y0, y1);
+                return;
+            }
+            int mid = (y0 + y1) >>> 1;
+            invokeAll(new BandTask(width, body, y0, mid), new BandTask(width, body, mid, y1));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * Remixes frames from one channel layout to another through a gain matrix.
+ * <p>
+ * Output channel {@code o} of a frame is the sum over the input channels {@code i} of
+ * {@code matrix[o][i] * input[i]}. {@link #forLayout(int, int, int)} builds the usual matrices
+ * from the speaker positions of a WAV channel mask: mono is copied to every output,
+ * multichannel is folded down to stereo with every left speaker into the left output and
+ * every right speaker into the right, the front pair at full gain and the rest at -3 dB,
+ * centre speakers at -3 dB into both and the LFE dropped, and anything to mono goes through
+ * stereo. Without a mask the channels are taken to be in the standard WAV order, which is
+ * the order of the mask bits.
+ */
+public class ChannelMixer {
+
+    /** Gain of the centre and surround channels in a fold-down, -3 dB. */
+    private static final float FOLD_GAIN = (float) Math.sqrt(0.5);
+
+    // Speakers feeding the left and right outputs of a fold-down, and those feeding both
+    private static final int LEFT = WavFormat.SPEAKER_FRONT_LEFT | WavFormat.SPEAKER_BACK_LEFT
+            | WavFormat.SPEAKER_FRONT_LEFT_OF_CENTER | WavFormat.SPEAKER_SIDE_LEFT
+            | WavFormat.SPEAKER_TOP_FRONT_LEFT | WavFormat.SPEAKER_TOP_BACK_LEFT;
+    private static final int RIGHT = WavFormat.SPEAKER_FRONT_RIGHT | WavFormat.SPEAKER_BACK_RIGHT
+            | WavFormat.SPEAKER_FRONT_RIGHT_OF_CENTER | WavFormat.SPEAKER_SIDE_RIGHT
+            | WavFormat.SPEAKER_TOP_FRONT_RIGHT | WavFormat.SPEAKER_TOP_BACK_RIGHT;
+    private static final int CENTRE = WavFormat.SPEAKER_FRONT_CENTER | WavFormat.SPEAKER_BACK_CENTER
+            | WavFormat.SPEAKER_TOP_CENTER | WavFormat.SPEAKER_TOP_FRONT_CENTER | WavFormat.SPEAKER_TOP_BACK_CENTER;
+
+    private final float[][] matrix;
+    private final int inChannels;
+
+    /**
+     * @param  matrix  the gains, indexed [output channel][input channel]; every row must have
+     *                 the same length, the number of input channels.
+     */
+    public ChannelMixer(float[][] matrix) {
+        if (matrix.length == 0 || matrix[0].length == 0) {
+            throw new IllegalArgumentException("Empty mixing matrix");
+        }
+        this.inChannels = matrix[0].length;
+        this.matrix = new float[matrix.length][];
+        for (int o = 0; o < matrix.length; o++) {
+            if (matrix[o].length != inChannels) {
+                throw new IllegalArgumentException("Row " + o + " of the mixing matrix has " + matrix[o].length
+                        + " gains, expected " + inChannels);
+            }
+            this.matrix[o] = matrix[o].clone();
+        }
+    }
+
+    /**
+     * Builds the default mix between two channel counts for channels in the standard WAV order.
+     *
+     * @param  inChannels   the number of input channels.
+     * @param  outChannels  the number of output channels.
+     * @return the mixer.
+     */
+    public static ChannelMixer forLayout(int inChannels, int outChannels) {
+        return forLayout(inChannels, 0, outChannels);
+    }
+
+    /**
+     * Builds the default mix between two layouts; see the class comment. Layouts it has no
+     * rule for keep the channels they share and leave the other outputs silent.
+     *
+     * @param  inChannels   the number of input channels.
+     * @param  channelMask  the speaker positions of the input, as in {@link WavFormat#channelMask};
+     *                      0 for the standard WAV order.
+     * @param  outChannels  the number of output channels.
+     * @return the mixer.
+     */
+    public static ChannelMixer forLayout(int inChannels, int channelMask, int outChannels) {
+        if (inChannels <= 0 || outChannels <= 0) {
+            throw new IllegalArgumentException("Cannot mix " + inChannels + " to " + outChannels + " channels");
+        }
+        float[][] matrix = new float[outChannels][inChannels];
+        if (inChannels == 1) {
+            for (int o = 0; o < outChannels; o++) {
+                matrix[o][0] = 1;
+            }
+        } else if (outChannels <= 2 && inChannels > 2) {
+            int mask = channelMask != 0 ? channelMask : (int) ((1L << Math.min(inChannels, 32)) - 1);
+            float[][] stereo = new float[2][inChannels];
+            for (int c = 0; c < inChannels; c++) {
+                int speaker = WavFormat.speaker(mask, c);
+                if ((speaker & CENTRE) != 0) {
+                    stereo[0][c] = FOLD_GAIN;
+                    stereo[1][c] = FOLD_GAIN;
+                } else if ((speaker & LEFT) != 0) {
+                    stereo[0][c] = speaker == WavFormat.SPEAKER_FRONT_LEFT ? 1 : FOLD_GAIN;
+                } else if ((speaker & RIGHT) != 0) {
+                    stereo[1][c] = speaker == WavFormat.SPEAKER_FRONT_RIGHT ? 1 : FOLD_GAIN;
+                }
+            }
+            matrix = outChannels == 2 ? stereo : toMono(stereo);
+        } else if (outChannels == 1) {
+            float[][] stereo = {new float[inChannels], new float[inChannels]};
+            stereo[0][0] = 1;
+            stereo[1][1] = 1;
+            matrix = toMono(stereo);
+        } else {
+            for (int c = 0; c < Math.min(inChannels, outChannels); c++) {
+                matrix[c][c] = 1;
+            }
+        }
+        return new ChannelMixer(matrix);
+    }
+
+    private static float[][] toMono(float[][] stereo) {
+        float[][] mono = new float[1][stereo[0].length];
+        for (int i = 0; i < mono[0].length; i++) {
+            mono[0][i] = 0.5f * (stereo[0][i] + stereo[1][i]);
+        }
+        return mono;
+    }
+
+    public int getInputChannels() {
+        return inChannels;
+    }
+
+    public int getOutputChannels() {
+        return matrix.length;
+    }
+
+    /**
+     * Mixes {@code frames} frames.
+     *
+     * @param  in         one array of samples per input channel.
+     * @param  inOffset   the index in each input array of the first frame.
+     * @param  frames     the number of frames.
+     * @param  out        one array per output channel; must not be one of the input arrays.
+     * @param  outOffset  the index in each output array of the first frame.
+     */
+    public void mix(float[][] in, int inOffset, int frames, float[][] out, int outOffset) {
+        for (int o = 0; o < matrix.length; o++) {
+            float[] gains = matrix[o];
+            float[] dst = out[o];
+            boolean first = true;
+            for (int i = 0; i < inChannels; i++) {
+                float gain = gains[i];
+                if (gain == 0) {
+                    continue;
+                }
+                float[] src = in[i];
+                if (first) {
+                    for (int f = 0; f < frames; f++) {
+                        dst[outOffset + f] = gain * src[inOffset + f];
+                    }
+                    first = false;
+                } else {
+                    for (int f = 0; f < frames; f++) {
+                        dst[outOffset + f] += gain * src[inOffset + f];
+                    }
+                }
+            }
+            if (first) {
+                Arrays.fill(dst, outOffset, outOffset + frames, 0f);
+            }
+        }
+    }
+}
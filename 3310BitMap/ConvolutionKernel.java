@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+/**
+ * A square integer convolution kernel with an odd side length and a divisor
+ * that the weighted sum is divided by before it is clamped to 0-255.
+ */
+public class ConvolutionKernel {
+
+    public static final ConvolutionKernel BOX_3X3 = box(1);
+
+    public static final ConvolutionKernel GAUSSIAN_3X3 = separable(new int[] {1, 2, 1}, new int[] {1, 2, 1}, 16);
+
+    /** Approximate sum of the 1D weights produced by {@link #gaussian(int, double)}. */
+    private static final int GAUSSIAN_SCALE = 1024;
+
+    public static final ConvolutionKernel EDGE_3X3 = of(new int[][] {
+        {0, 1, 0},
+        {1, -4, 1},
+        {0, 1, 0}
+    }, 1);
+
+    private final int size;
+    private final int[] weights;
+    private final int divisor;
+
+    // The 1D factors of a separable kernel, or null when the kernel is not separable
+    private final int[] rowFactor;
+    private final int[] columnFactor;
+
+    /**
+     * @param  size     the side length of the kernel; must be odd.
+     * @param  weights  the {@code size * size} weights in row-major order.
+     * @param  divisor  the value the weighted sum is divided by; must not be zero.
+     */
+    public ConvolutionKernel(int size, int[] weights, int divisor) {
+        if (size < 1 || size % 2 == 0) {
+            throw new IllegalArgumentException("Kernel size must be odd: " + size);
+        }
+        if (weights.length != size * size) {
+            throw new IllegalArgumentException("Expected " + size * size + " weights, got " + weights.length);
+        }
+        if (divisor == 0) {
+            throw new IllegalArgumentException("Kernel divisor must not be zero");
+        }
+        this.size = size;
+        this.weights = weights.clone();
+        this.divisor = divisor;
+
+        int[][] factors = factorize(size, this.weights);
+        this.rowFactor = factors == null ? null : factors[0];
+        this.columnFactor = factors == null ? null : factors[1];
+    }
+
+    private ConvolutionKernel(int[] rowFactor, int[] columnFactor, int divisor) {
+        if (rowFactor.length != columnFactor.length) {
+            throw new IllegalArgumentException("Row and column factors must have the same length");
+        }
+        int size = rowFactor.length;
+        if (size % 2 == 0) {
+            throw new IllegalArgumentException("Kernel size must be odd: " + size);
+        }
+        if (divisor == 0) {
+            throw new IllegalArgumentException("Kernel divisor must not be zero");
+        }
+        this.size = size;
+        this.weights = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                weights[y * size + x] = columnFactor[y] * rowFactor[x];
+            }
+        }
+        this.divisor = divisor;
+        this.rowFactor = rowFactor.clone();
+        this.columnFactor = columnFactor.clone();
+    }
+
+    /**
+     * Declares a separable kernel whose weight at {@code (kx, ky)} is {@code column[ky] * row[kx]}.
+     * Such kernels are applied as a horizontal and a vertical 1D pass.
+     *
+     * @param  row      the horizontal factor; its length is the kernel size and must be odd.
+     * @param  column   the vertical factor, as long as {@code row}.
+     * @param  divisor  the value the weighted sum is divided by.
+     * @return the kernel.
+     */
+    public static ConvolutionKernel separable(int[] row, int[] column, int divisor) {
+        return new ConvolutionKernel(row, column, divisor);
+    }
+
+    /**
+     * Builds a mean filter over a {@code (2 * radius + 1)} square.
+     *
+     * @param  radius  the number of pixels on each side of the centre.
+     * @return the separable box kernel.
+     */
+    public static ConvolutionKernel box(int radius) {
+        int[] ones = new int[2 * radius + 1];
+        Arrays.fill(ones, 1);
+        return separable(ones, ones, ones.length * ones.length);
+    }
+
+    /**
+     * Builds a separable Gaussian kernel with {@code sigma = radius / 3}, so the kernel
+     * covers three standard deviations on either side of the centre.
+     *
+     * @param  radius  the number of pixels on each side of the centre.
+     * @return the separable Gaussian kernel.
+     */
+    public static ConvolutionKernel gaussian(int radius) {
+        return gaussian(radius, Math.max(radius / 3.0, 0.5));
+    }
+
+    /**
+     * Builds a separable Gaussian kernel. The 1D weights are quantized so that they add up to
+     * roughly {@value #GAUSSIAN_SCALE}, which keeps the 2D sums well inside {@code int} range.
+     *
+     * @param  radius  the number of pixels on each side of the centre.
+     * @param  sigma   the standard deviation in pixels.
+     * @return the separable Gaussian kernel.
+     */
+    public static ConvolutionKernel gaussian(int radius, double sigma) {
+        double[] g = new double[2 * radius + 1];
+        double total = 0;
+        for (int i = -radius; i <= radius; i++) {
+            g[i + radius] = Math.exp(-(i * i) / (2 * sigma * sigma));
+            total += g[i + radius];
+        }
+        int[] factor = new int[g.length];
+        int sum = 0;
+        for (int i = 0; i < g.length; i++) {
+            factor[i] = (int) Math.round(g[i] / total * GAUSSIAN_SCALE);
+            sum += factor[i];
+        }
+        return separable(factor, factor, sum * sum);
+    }
+
+    /**
+     * Splits a square weight matrix into a column and a row factor when it has rank one
+     * over the integers.
+     *
+     * @return {@code {row, column}}, or {@code null} when the matrix is not separable.
+     */
+    private static int[][] factorize(int size, int[] weights) {
+        int pivotRow = -1;
+        int pivotCol = -1;
+        for (int i = 0; i < weights.length && pivotRow < 0; i++) {
+            if (weights[i] != 0) {
+                pivotRow = i / size;
+                pivotCol = i % size;
+            }
+        }
+        if (pivotRow < 0) {
+            return null;
+        }
+
+        // The row factor is the pivot row reduced by the gcd of its entries
+        int divisor = 0;
+        for (int x = 0; x < size; x++) {
+            divisor = gcd(divisor, Math.abs(weights[pivotRow * size + x]));
+        }
+        int[] row = new int[size];
+        for (int x = 0; x < size; x++) {
+            row[x] = weights[pivotRow * size + x] / divisor;
+        }
+
+        int[] column = new int[size];
+        for (int y = 0; y < size; y++) {
+            int w = weights[y * size + pivotCol];
+            if (w % row[pivotCol] != 0) {
+                return null;
+            }
+            column[y] = w / row[pivotCol];
+            for (int x = 0; x < size; x++) {
+                if (weights[y * size + x] != column[y] * row[x]) {
+                    return null;
+                }
+            }
+        }
+        return new int[][] {row, column};
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Builds a kernel from its rows, as the filters in {@link Bitmap} used to declare them.
+     *
+     * @param  rows     the kernel rows, each as long as there are rows.
+     * @param  divisor  the value the weighted sum is divided by.
+     * @return the kernel.
+     */
+    public static ConvolutionKernel of(int[][] rows, int divisor) {
+        int size = rows.length;
+        int[] weights = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            if (rows[y].length != size) {
+                throw new IllegalArgumentException("Kernel must be square");
+            }
+            System.arraycopy(rows[y], 0, weights, y * size, size);
+        }
+        return new ConvolutionKernel(size, weights, divisor);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getRadius() {
+        return size / 2;
+    }
+
+    public int getDivisor() {
+        return divisor;
+    }
+
+    /**
+     * @param  kx  the column within the kernel, from 0 to {@code size - 1}.
+     * @param  ky  the row within the kernel, from 0 to {@code size - 1}.
+     * @return the weight at that position.
+     */
+    public int getWeight(int kx, int ky) {
+        return weights[ky * size + kx];
+    }
+
+    /**
+     * Tells whether this is a mean filter such as {@link #box(int)} builds: every weight 1 and
+     * the divisor the number of weights.
+     *
+     * @return {@code true} for a box kernel.
+     */
+    boolean isBox() {
+        if (divisor != weights.length) {
+            return false;
+        }
+        for (int weight : weights) {
+            if (weight != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the kernel was declared separable or its weights were found to factor
+     * into a column times a row.
+     *
+     * @return {@code true} if {@link Convolution} may apply it as two 1D passes.
+     */
+    public boolean isSeparable() {
+        return rowFactor != null;
+    }
+
+    /** Returns the horizontal factor of a separable kernel; callers must not modify the array. */
+    int[] rowFactor() {
+        return rowFactor;
+    }
+
+    /** Returns the vertical factor of a separable kernel; callers must not modify the array. */
+    int[] columnFactor() {
+        return columnFactor;
+    }
+
+    /** Returns the weights in row-major order; callers must not modify the array. */
+    int[] weights() {
+        return weights;
+    }
+}
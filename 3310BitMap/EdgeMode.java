@@ -0,0 +1,36 @@
+/**
+ * How a convolution treats kernel taps that fall outside the image.
+ */
+public enum EdgeMode {
+
+    /** Pixels whose neighbourhood leaves the image are not filtered and are written as opaque black. */
+    SKIP,
+
+    /** Out-of-range coordinates are clamped to the nearest edge pixel. */
+    CLAMP,
+
+    /** Out-of-range coordinates wrap around to the opposite edge. */
+    WRAP;
+
+    /**
+     * Maps a possibly out-of-range coordinate onto {@code [0, length)}.
+     *
+     * @param  coord   the coordinate to resolve.
+     * @param  length  the image extent along that axis.
+     * @return the resolved coordinate, or {@code -1} for {@link #SKIP} when {@code coord} is out of range.
+     */
+    int resolve(int coord, int length) {
+        if (coord >= 0 && coord < length) {
+            return coord;
+        }
+        switch (this) {
+            case CLAMP:
+                return coord < 0 ? 0 : length - 1;
+            case WRAP:
+                int wrapped = coord % length;
+                return wrapped < 0 ? wrapped + length : wrapped;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies a chain of {@link AudioEffect}s to channel buffers in place, without any GUI.
+ * <p>
+ * Large buffers are cut into slices of frames processed in parallel on a {@link ForkJoinPool}.
+ * Every effect of the chain runs on a slice before the next slice is started, so each slice
+ * is read from memory once for the whole chain.
+ */
+public class EffectsEngine {
+
+    /** Slices with fewer frames than this are processed on the current thread. */
+    private static final int MIN_SLICE_FRAMES = 1 << 16;
+
+    private final List<AudioEffect> effects = new ArrayList<>();
+    private final ForkJoinPool pool;
+
+    public EffectsEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public EffectsEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Appends an effect to the chain.
+     *
+     * @param  effect  the effect, applied after those already added.
+     * @return this engine.
+     */
+    public EffectsEngine add(AudioEffect effect) {
+        effects.add(effect);
+        return this;
+    }
+
+    /**
+     * Runs the chain over {@code frames} frames of every channel.
+     *
+     * @param  channels    one buffer of normalized samples per channel.
+     * @param  offset      the index in each buffer of the first frame to process.
+     * @param  frames      the number of frames to process.
+     * @param  firstFrame  the frame index, within the recording, of the frame at {@code offset}.
+     */
+    public void process(float[][] channels, int offset, int frames, long firstFrame) {
+        if (frames <= MIN_SLICE_FRAMES) {
+            processSlice(channels, offset, frames, firstFrame);
+        } else {
+            pool.invoke(new SliceTask(channels, offset, frames, firstFrame));
+        }
+    }
+
+    /**
+     * Streams a whole file through the chain: each block of frames is decoded, processed and
+     * encoded before the next one is read, so memory use does not depend on the file length.
+     *
+     * @param  in   the source, read from its current frame to the end; effect positions are
+     *             frames of the source.
+     * @param  out  the destination, which must have the source's channel count.
+     * @throws IOException if the source cannot be read or the destination written.
+     */
+    public void process(WavSampleReader in, WavWriter out) throws IOException {
+        process(in, null, null, out);
+    }
+
+    /**
+     * Streams a whole file through a channel remix, a sample-rate conversion and the chain,
+     * in that order, one block of frames at a time.
+     *
+     * @param  in         the source, read from its current frame to the end.
+     * @param  mixer      the remix from the source's channels, or {@code null} to keep them.
+     * @param  resampler  the conversion from the source's rate, with one channel per output
+     *                    channel of the mix, or {@code null} to keep the rate; effect positions
+     *                    are frames at the output rate.
+     * @param  out        the destination, with the channel count and rate of the output.
+     * @throws IOException if the source cannot be read or the destination written.
+     */
+    public void process(WavSampleReader in, ChannelMixer mixer, Resampler resampler, WavWriter out) throws IOException {
+        int inChannels = in.getFormat().numChn;
+        int outChannels = mixer == null ? inChannels : mixer.getOutputChannels();
+        float[][] block = new float[inChannels][WavSampleReader.FRAMES_PER_READ];
+        float[][] mixed = mixer == null ? block : new float[outChannels][WavSampleReader.FRAMES_PER_READ];
+        float[][] output = resampler == null ? mixed
+                : new float[outChannels][resampler.maxOutput(WavSampleReader.FRAMES_PER_READ)];
+        long firstFrame = resampler == null ? in.getFramePosition() : resampler.outputLength(in.getFramePosition());
+        int frames;
+        while ((frames = in.readFrames(block, 0, WavSampleReader.FRAMES_PER_READ)) > 0) {
+            if (mixer != null) {
+                mixer.mix(block, 0, frames, mixed, 0);
+            }
+            if (resampler != null) {
+                frames = resampler.process(mixed, 0, frames, output, 0);
+            }
+            process(output, 0, frames, firstFrame);
+            out.writeFrames(output, 0, frames);
+            firstFrame += frames;
+        }
+        if (resampler != null) {
+            frames = resampler.flush(output, 0);
+            process(output, 0, frames, firstFrame);
+            out.writeFrames(output, 0, frames);
+        }
+    }
+
+    private void processSlice(float[][] channels, int offset, int frames, long firstFrame) {
+        for (float[] channel : channels) {
+            for (AudioEffect effect : effects) {
+                effect.process(channel, offset, frames, firstFrame);
+            }
+        }
+    }
+
+    private class SliceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final float[][] channels;
+        private final int offset;
+        private final int frames;
+        private final long firstFrame;
+
+        SliceTask(float[][] channels, int offset, int frames, long firstFrame) {
+            this.channels = channels;
+            this.offset = offset;
+            this.frames = frames;
+            this.firstFrame = firstFrame;
+        }
+
+        @Override
+        protected void compute() {
+            if (frames <= MIN_SLICE_FRAMES) {
+                processSlice(channels, offset, frames, firstFrame);
+                return;
+            }
+            int half = frames >>> 1;
+            invokeAll(new SliceTask(channels, offset, half, firstFrame),
+                      new SliceTask(channels, offset + half, frames - half, firstFrame + half));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+/**
+ * An in-place radix-2 fast Fourier transform of one fixed power-of-two size.
+ * <p>
+ * The twiddle factors and the bit-reversal permutation are computed once by the constructor,
+ * so a transform is only the butterfly passes over the caller's arrays. The caller owns the
+ * {@code double[]} work buffers and reuses them from one transform to the next; an instance
+ * holds nothing but its tables and can be shared by any number of threads.
+ */
+public final class Fft {
+
+    private final int size;
+    private final int log2;
+
+    // cos/sin of -2*pi*k/size for k < size/2
+    private final double[] cos;
+    private final double[] sin;
+
+    // Pairs (i, j), i < j, to swap for the bit-reversal permutation
+    private final int[] swaps;
+
+    /**
+     * Precomputes the tables for transforms of {@code size} points.
+     *
+     * @param  size  the transform length, a power of two.
+     */
+    public Fft(int size) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+        }
+        this.size = size;
+        this.log2 = Integer.numberOfTrailingZeros(size);
+        this.cos = new double[Math.max(1, size / 2)];
+        this.sin = new double[cos.length];
+        for (int k = 0; k < size / 2; k++) {
+            double angle = -2 * Math.PI * k / size;
+            cos[k] = Math.cos(angle);
+            sin[k] = Math.sin(angle);
+        }
+
+        int count = 0;
+        int[] pairs = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = reverse(i);
+            if (i < j) {
+                pairs[count++] = i;
+                pairs[count++] = j;
+            }
+        }
+        this.swaps = Arrays.copyOf(pairs, count);
+    }
+
+    private int reverse(int i) {
+        return log2 == 0 ? 0 : Integer.reverse(i) >>> (32 - log2);
+    }
+
+    /** Returns the transform length. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replaces {@code re + i*im} by its discrete Fourier transform, unscaled.
+     *
+     * @param  re  the real parts, at least {@link #size()} long.
+     * @param  im  the imaginary parts, at least {@link #size()} long.
+     */
+    public void forward(double[] re, double[] im) {
+        permute(re, im);
+        butterflies(re, im, 1);
+    }
+
+    /**
+     * Replaces {@code re + i*im} by its inverse discrete Fourier transform, scaled by
+     * {@code 1 / size} so that {@code inverse(forward(x)) == x}.
+     *
+     * @param  re  the real parts, at least {@link #size()} long.
+     * @param  im  the imaginary parts, at least {@link #size()} long.
+     */
+    public void inverse(double[] re, double[] im) {
+        permute(re, im);
+        butterflies(re, im, -1);
+        double scale = 1.0 / size;
+        for (int i = 0; i < size; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void permute(double[] re, double[] im) {
+        for (int s = 0; s < swaps.length; s += 2) {
+            int i = swaps[s];
+            int j = swaps[s + 1];
+            double t = re[i];
+            re[i] = re[j];
+            re[j] = t;
+            t = im[i];
+            im[i] = im[j];
+            im[j] = t;
+        }
+    }
+
+    /**
+     * Runs the decimation-in-time passes on bit-reversed input; {@code sign} is 1 for the
+     * forward transform and -1 for the inverse, which uses the conjugate twiddles.
+     */
+    private void butterflies(double[] re, double[] im, int sign) {
+        // The first pass has only the twiddle 1, so it is a plain sum and difference
+        for (int i = 0; i + 1 < size; i += 2) {
+            double r = re[i + 1];
+            double m = im[i + 1];
+            re[i + 1] = re[i] - r;
+            im[i + 1] = im[i] - m;
+            re[i] += r;
+            im[i] += m;
+        }
+        for (int half = 2; half < size; half <<= 1) {
+            int step = size / (half << 1);
+            for (int start = 0; start < size; start += half << 1) {
+                for (int j = 0, k = 0; j < half; j++, k += step) {
+                    double wr = cos[k];
+                    double wi = sign * sin[k];
+                    int a = start + j;
+                    int b = a + half;
+                    double r = re[b] * wr - im[b] * wi;
+                    double m = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - r;
+                    im[b] = im[a] - m;
+                    re[a] += r;
+                    im[a] += m;
+                }
+            }
+        }
+    }
+}
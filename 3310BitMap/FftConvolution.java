@@ -0,0 +1,269 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Applies large kernels by multiplication in the frequency domain.
+ * <p>
+ * Output rows are cut into square tiles. Each tile gathers the source pixels it reaches,
+ * with the edge mode applied, into an {@code n} by {@code n} block, where {@code n} is a power
+ * of two about four times the kernel size. The block is transformed with a 2D {@link Fft},
+ * multiplied by the transform of the flipped kernel and transformed back (overlap-save): the
+ * part of the circular result that wrapped around is dropped, and the rest is the tile.
+ * The kernel is real, so the real and imaginary parts of a transform go through the product
+ * independently: red and green share one complex transform, and tiles are taken in
+ * horizontal pairs whose blue channels share a third. The cost per pixel grows with
+ * {@code log n} rather than with the kernel area.
+ * <p>
+ * The transformed sums are rounded to the exact integer sums of the spatial path before the
+ * divisor is applied, so the output is the same pixel for pixel.
+ */
+class FftConvolution implements Convolution.RowKernel {
+
+    // Transforms of the kernels in use, computed once per kernel
+    private static final Map<ConvolutionKernel, Spectrum> SPECTRA = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /** The transform of a kernel, with the {@link Fft} of its size that computed it. */
+    private static final class Spectrum {
+        final Fft fft;
+        final double[] re;
+        final double[] im;
+
+        Spectrum(Fft fft, double[] re, double[] im) {
+            this.fft = fft;
+            this.re = re;
+            this.im = im;
+        }
+    }
+
+    private final int minSize;
+
+    /**
+     * @param  minSize  the smallest kernel size worth transforming.
+     */
+    FftConvolution(int minSize) {
+        this.minSize = minSize;
+    }
+
+    /**
+     * Separable kernels are left to the two 1D passes, which are cheaper up to sizes far
+     * beyond any kernel in use.
+     */
+    @Override
+    public boolean supports(ConvolutionKernel kernel) {
+        return !kernel.isSeparable() && kernel.getSize() >= minSize;
+    }
+
+    /**
+     * Returns the side of the transform for a kernel: the smallest power of two at least four
+     * times the kernel's reach, so most of every tile is kept.
+     */
+    static int transformSize(ConvolutionKernel kernel) {
+        int reach = Math.max(4 * (kernel.getSize() - 1), 8);
+        return Integer.highestOneBit(reach - 1) << 1;
+    }
+
+    /**
+     * Returns the number of output rows and columns one tile produces.
+     *
+     * @param  kernel  a supported kernel.
+     * @return the tile side.
+     */
+    static int tileSize(ConvolutionKernel kernel) {
+        return transformSize(kernel) - kernel.getSize() + 1;
+    }
+
+    @Override
+    public void convolveRows(int[] src, int srcStride, int srcFirstRow, int width, int height,
+                             ConvolutionKernel kernel, EdgeMode edgeMode,
+                             int[] dst, int dstStride, int dstFirstRow, int y0, int y1) {
+        int size = kernel.getSize();
+        int radius = kernel.getRadius();
+        int divisor = kernel.getDivisor();
+        int n = transformSize(kernel);
+        int step = n - size + 1;
+        Spectrum spectrum = spectrum(kernel, n);
+        Fft fft = spectrum.fft;
+
+        // Resolved source column for every tap position of every tile
+        int[] columns = new int[width + n];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = edgeMode.resolve(i - radius, width);
+        }
+        int[] rowBase = new int[n];
+
+        // Red and green of the left and right tile of a pair; the pair's two blues share one block
+        double[][] redGreenRe = new double[2][n * n];
+        double[][] redGreenIm = new double[2][n * n];
+        double[][] blue = new double[2][n * n];
+        double[] lineRe = new double[n];
+        double[] lineIm = new double[n];
+        int[] tileCols = new int[2];
+
+        for (int ty = y0; ty < y1; ty += step) {
+            int rows = Math.min(step, y1 - ty);
+            int inRows = rows + size - 1;
+            for (int i = 0; i < inRows; i++) {
+                int sy = edgeMode.resolve(ty - radius + i, height);
+                rowBase[i] = sy < 0 ? -1 : (sy - srcFirstRow) * srcStride;
+            }
+
+            for (int pairX = 0; pairX < width; pairX += 2 * step) {
+                int tiles = pairX + step < width ? 2 : 1;
+
+                // Gather the tiles' source blocks; everything past them stays zero
+                Arrays.fill(blue[0], 0);
+                Arrays.fill(blue[1], 0);
+                for (int t = 0; t < tiles; t++) {
+                    int tx = pairX + t * step;
+                    tileCols[t] = Math.min(step, width - tx);
+                    int inCols = tileCols[t] + size - 1;
+                    double[] red = redGreenRe[t];
+                    double[] green = redGreenIm[t];
+                    double[] tileBlue = blue[t];
+                    Arrays.fill(red, 0);
+                    Arrays.fill(green, 0);
+                    for (int i = 0; i < inRows; i++) {
+                        int base = rowBase[i];
+                        if (base < 0) {
+                            continue;
+                        }
+                        int row = i * n;
+                        for (int j = 0; j < inCols; j++) {
+                            int sx = columns[tx + j];
+                            if (sx < 0) {
+                                continue;
+                            }
+                            int pixel = src[base + sx];
+                            red[row + j] = (pixel >> 16) & 0xFF;
+                            green[row + j] = (pixel >> 8) & 0xFF;
+                            tileBlue[row + j] = pixel & 0xFF;
+                        }
+                    }
+                }
+
+                for (int t = 0; t < tiles; t++) {
+                    forward2d(fft, redGreenRe[t], redGreenIm[t], inRows, lineRe, lineIm);
+                    multiply(redGreenRe[t], redGreenIm[t], spectrum);
+                    inverse2d(fft, redGreenRe[t], redGreenIm[t], tileCols[t], lineRe, lineIm);
+                }
+                forward2d(fft, blue[0], blue[1], inRows, lineRe, lineIm);
+                multiply(blue[0], blue[1], spectrum);
+                inverse2d(fft, blue[0], blue[1], tileCols[0], lineRe, lineIm);
+
+                for (int t = 0; t < tiles; t++) {
+                    int tx = pairX + t * step;
+                    int cols = tileCols[t];
+                    double[] red = redGreenRe[t];
+                    double[] green = redGreenIm[t];
+                    double[] tileBlue = blue[t];
+                    for (int i = 0; i < rows; i++) {
+                        int y = ty + i;
+                        int out = (y - dstFirstRow) * dstStride + tx;
+                        boolean skipRow = edgeMode == EdgeMode.SKIP && (y < radius || y >= height - radius);
+                        for (int j = 0; j < cols; j++) {
+                            int x = tx + j;
+                            if (skipRow || (edgeMode == EdgeMode.SKIP && (x < radius || x >= width - radius))) {
+                                dst[out + j] = PixelRaster.OPAQUE_BLACK;
+                                continue;
+                            }
+                            int k = i * n + j;
+                            int redSum = (int) Math.round(red[k]);
+                            int greenSum = (int) Math.round(green[k]);
+                            int blueSum = (int) Math.round(tileBlue[k]);
+                            dst[out + j] = PixelRaster.pack(Convolution.saturate(redSum / divisor),
+                                    Convolution.saturate(greenSum / divisor), Convolution.saturate(blueSum / divisor));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the transform of the kernel flipped and wrapped around the origin, so that
+     * multiplying by it computes the same weighted sums as the spatial path.
+     */
+    private static Spectrum spectrum(ConvolutionKernel kernel, int n) {
+        Spectrum spectrum = SPECTRA.get(kernel);
+        if (spectrum != null) {
+            return spectrum;
+        }
+        Fft fft = new Fft(n);
+        int size = kernel.getSize();
+        double[] re = new double[n * n];
+        double[] im = new double[n * n];
+        for (int ky = 0; ky < size; ky++) {
+            for (int kx = 0; kx < size; kx++) {
+                re[((n - ky) % n) * n + (n - kx) % n] = kernel.getWeight(kx, ky);
+            }
+        }
+        forward2d(fft, re, im, n, new double[n], new double[n]);
+        spectrum = new Spectrum(fft, re, im);
+        SPECTRA.put(kernel, spectrum);
+        return spectrum;
+    }
+
+    /**
+     * Transforms the rows, then the columns, of an {@code n} by {@code n} block; rows from
+     * {@code usedRows} on are known to be zero and are left alone in the first pass.
+     */
+    private static void forward2d(Fft fft, double[] re, double[] im, int usedRows, double[] lineRe, double[] lineIm) {
+        int n = fft.size();
+        for (int i = 0; i < usedRows; i++) {
+            System.arraycopy(re, i * n, lineRe, 0, n);
+            System.arraycopy(im, i * n, lineIm, 0, n);
+            fft.forward(lineRe, lineIm);
+            System.arraycopy(lineRe, 0, re, i * n, n);
+            System.arraycopy(lineIm, 0, im, i * n, n);
+        }
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < n; i++) {
+                lineRe[i] = re[i * n + j];
+                lineIm[i] = im[i * n + j];
+            }
+            fft.forward(lineRe, lineIm);
+            for (int i = 0; i < n; i++) {
+                re[i * n + j] = lineRe[i];
+                im[i * n + j] = lineIm[i];
+            }
+        }
+    }
+
+    /**
+     * Inverts {@link #forward2d}, transforming every row but only the first {@code usedColumns}
+     * columns, which hold the pixels kept.
+     */
+    private static void inverse2d(Fft fft, double[] re, double[] im, int usedColumns, double[] lineRe, double[] lineIm) {
+        int n = fft.size();
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(re, i * n, lineRe, 0, n);
+            System.arraycopy(im, i * n, lineIm, 0, n);
+            fft.inverse(lineRe, lineIm);
+            System.arraycopy(lineRe, 0, re, i * n, n);
+            System.arraycopy(lineIm, 0, im, i * n, n);
+        }
+        for (int j = 0; j < usedColumns; j++) {
+            for (int i = 0; i < n; i++) {
+                lineRe[i] = re[i * n + j];
+                lineIm[i] = im[i * n + j];
+            }
+            fft.inverse(lineRe, lineIm);
+            for (int i = 0; i < n; i++) {
+                re[i * n + j] = lineRe[i];
+                im[i * n + j] = lineIm[i];
+            }
+        }
+    }
+
+    private static void multiply(double[] re, double[] im, Spectrum spectrum) {
+        double[] kRe = spectrum.re;
+        double[] kIm = spectrum.im;
+        for (int i = 0; i < re.length; i++) {
+            double r = re[i] * kRe[i] - im[i] * kIm[i];
+            im[i] = re[i] * kIm[i] + im[i] * kRe[i];
+            re[i] = r;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sequence of convolutions where each stage filters the output of the previous one,
+ * for example a blur followed by edge detection.
+ */
+public class FilterChain {
+
+    /** One convolution in a chain. */
+    public static class Stage {
+        private final ConvolutionKernel kernel;
+        private final EdgeMode edgeMode;
+
+        Stage(ConvolutionKernel kernel, EdgeMode edgeMode) {
+            this.kernel = kernel;
+            this.edgeMode = edgeMode;
+        }
+
+        public ConvolutionKernel getKernel() {
+            return kernel;
+        }
+
+        public EdgeMode getEdgeMode() {
+            return edgeMode;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Appends a stage to the chain.
+     *
+     * @param  kernel    the kernel applied to the previous stage's output.
+     * @param  edgeMode  how taps outside the image are handled.
+     * @return this chain.
+     */
+    public FilterChain then(ConvolutionKernel kernel, EdgeMode edgeMode) {
+        stages.add(new Stage(kernel, edgeMode));
+        return this;
+    }
+
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * Returns the number of extra rows above and below an output band that the first stage
+     * has to be computed for.
+     *
+     * @return the sum of the radii of every stage after the first.
+     */
+    int halo() {
+        int halo = 0;
+        for (int i = 1; i < stages.size(); i++) {
+            halo += stages.get(i).kernel.getRadius();
+        }
+        return halo;
+    }
+
+    /**
+     * Tells whether the chain can be evaluated band by band. A {@link EdgeMode#WRAP} stage
+     * after the first reads intermediate rows from the far side of the image, which a band
+     * does not have.
+     *
+     * @return {@code true} if no stage after the first wraps.
+     */
+    boolean isFusable() {
+        for (int i = 1; i < stages.size(); i++) {
+            if (stages.get(i).edgeMode == EdgeMode.WRAP) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs several {@link FilterChain}s over the same image in a single traversal.
+ * <p>
+ * The image is cut into bands of rows small enough to stay in cache. For every band each
+ * chain is evaluated in turn, so the source rows are read from memory once for all outputs.
+ * Within a chain, intermediate stages are only computed for the band plus the halo rows the
+ * following stages need, into scratch buffers that never hold a whole image. Bands run in
+ * parallel on a {@link ForkJoinPool}.
+ */
+public class FilterPipeline {
+
+    /** Target size of a band, in pixels, so a band and its scratch rows fit in a core's cache. */
+    private static final int BAND_PIXELS = 1 << 15;
+
+    private final List<FilterChain> chains = new ArrayList<>();
+
+    /**
+     * Adds a single-kernel output to the pipeline.
+     *
+     * @param  kernel    the kernel to apply to the source image.
+     * @param  edgeMode  how taps outside the image are handled.
+     * @return the index of this output in the array returned by {@link #apply(PixelRaster)}.
+     */
+    public int add(ConvolutionKernel kernel, EdgeMode edgeMode) {
+        return add(new FilterChain().then(kernel, edgeMode));
+    }
+
+    /**
+     * Adds a chain of filters whose final stage becomes one output of the pipeline.
+     *
+     * @param  chain  the chain to evaluate; it must have at least one stage.
+     * @return the index of this output in the array returned by {@link #apply(PixelRaster)}.
+     */
+    public int add(FilterChain chain) {
+        if (chain.getStages().isEmpty()) {
+            throw new IllegalArgumentException("Filter chain has no stages");
+        }
+        chains.add(chain);
+        return chains.size() - 1;
+    }
+
+    public PixelRaster[] apply(PixelRaster image) {
+        return apply(image, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Evaluates every chain on {@code image}.
+     *
+     * @param  image  the source image; it is not modified.
+     * @param  pool   the pool that runs the bands.
+     * @return one output raster per chain, in the order the chains were added.
+     */
+    public PixelRaster[] apply(PixelRaster image, ForkJoinPool pool) {
+        PixelRaster[] outputs = new PixelRaster[chains.size()];
+        List<Integer> fused = new ArrayList<>();
+        for (int i = 0; i < outputs.length; i++) {
+            FilterChain chain = chains.get(i);
+            if (chain.isFusable()) {
+                outputs[i] = image.createCompatible();
+                fused.add(i);
+            } else {
+                // Wrapping intermediates need the whole previous stage, so run this chain stage by stage
+                PixelRaster current = image;
+                for (FilterChain.Stage stage : chain.getStages()) {
+                    current = Convolution.apply(current, stage.getKernel(), stage.getEdgeMode(), pool);
+                }
+                outputs[i] = current;
+            }
+        }
+        if (!fused.isEmpty()) {
+            pool.invoke(new BandTask(image, fused, outputs, 0, image.getHeight()));
+        }
+        return outputs;
+    }
+
+    /**
+     * Evaluates one chain for output rows {@code [y0, y1)}.
+     */
+    private static void runChain(FilterChain chain, PixelRaster image, PixelRaster output, int y0, int y1) {
+        List<FilterChain.Stage> stages = chain.getStages();
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        // Row range each stage must produce, working back from the final output band
+        int n = stages.size();
+        int[] first = new int[n];
+        int[] last = new int[n];
+        first[n - 1] = y0;
+        last[n - 1] = y1;
+        for (int i = n - 2; i >= 0; i--) {
+            int radius = stages.get(i + 1).getKernel().getRadius();
+            first[i] = Math.max(0, first[i + 1] - radius);
+            last[i] = Math.min(height, last[i + 1] + radius);
+        }
+
+        int[] src = image.getPixels();
+        int srcStride = image.getStride();
+        int srcFirstRow = 0;
+        for (int i = 0; i < n; i++) {
+            FilterChain.Stage stage = stages.get(i);
+            int[] dst;
+            int dstStride;
+            int dstFirstRow;
+            if (i == n - 1) {
+                dst = output.getPixels();
+                dstStride = output.getStride();
+                dstFirstRow = 0;
+            } else {
+                dst = new int[(last[i] - first[i]) * width];
+                dstStride = width;
+                dstFirstRow = first[i];
+            }
+            Convolution.convolveRows(src, srcStride, srcFirstRow, width, height,
+                    stage.getKernel(), stage.getEdgeMode(), dst, dstStride, dstFirstRow, first[i], last[i]);
+            src = dst;
+            srcStride = dstStride;
+            srcFirstRow = dstFirstRow;
+        }
+    }
+
+    private class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PixelRaster image;
+        private final List<Integer> fused;
+        private final PixelRaster[] outputs;
+        private final int y0;
+        private final int y1;
+
+        BandTask(PixelRaster image, List<Integer> fused, PixelRaster[] outputs, int y0, int y1) {
+            this.image = image;
+            this.fused = fused;
+            this.outputs = outputs;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            int minRows = Math.max(1, BAND_PIXELS / Math.max(1, image.getWidth()));
+            for (int i : fused) {
+                // Keep bands tall enough that recomputed halo rows stay a small fraction of the work
+                minRows = Math.max(minRows, 4 * chains.get(i).halo());
+            }
+            if (y1 - y0 <= minRows) {
+                for (int i : fused) {
+                    runChain(chains.get(i), image, outputs[i], y0, y1);
+                }
+                return;
+            }
+            int mid = (y0 + y1) >>> 1;
+            invokeAll(new BandTask(image, fused, outputs, y0, mid),
+                      new BandTask(image, fused, outputs, mid, y1));
+        }
+    }
+}
@@ -1,25 +1,74 @@
 import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 public class ImageCanvas extends Canvas {
-    private Color[][] pixels;
+    private static final long serialVersionUID = 1L;
+
+    private BufferedImage image;
 
     public ImageCanvas(Color[][] pixels, int width, int height) {
-        this.pixels = pixels;
+        this(PixelRaster.fromColors(pixels), width, height);
+    }
+
+    public ImageCanvas(PixelRaster pixels, int width, int height) {
+        this.image = pixels == null ? null : toBufferedImage(pixels);
         setSize(width, height);
     }
 
+    /**
+     * Shows an image that has already been rendered, sized to fit it.
+     *
+     * @param  image  the image, in screen row order.
+     */
+    public ImageCanvas(BufferedImage image) {
+        this.image = image;
+        setSize(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Replaces the displayed image and schedules a repaint.
+     *
+     * @param  pixels  the new image, in file row order.
+     */
+    public void setPixels(PixelRaster pixels) {
+        this.image = toBufferedImage(pixels);
+        repaint();
+    }
+
+    /**
+     * Copies a raster into an {@code int}-backed image, one row at a time, turning the
+     * bottom-up file row order into the top-down order used on screen.
+     *
+     * @param  pixels  the image, in file row order.
+     * @return a new image whose data buffer holds the same packed pixels.
+     */
+    public static BufferedImage toBufferedImage(PixelRaster pixels) {
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] src = pixels.getPixels();
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(src, y * pixels.getStride(), data, (height - 1 - y) * width, width);
+        }
+        return image;
+    }
+
+    @Override
+    public void update(Graphics g) {
+        // The image covers the whole canvas, so skip the background clear that causes flicker
+        paint(g);
+    }
+
     @Override
     public void paint(Graphics g) {
-        super.paint(g);
-        if (pixels != null) {
-            for (int y = 0; y < pixels.length; y++) {
-                for (int x = 0; x < pixels[y].length; x++) {
-                    g.setColor(pixels[y][x]);
-                    g.fillRect(x, pixels.length-y, 1, 1);
-                }
-            }
+        if (image != null) {
+            g.drawImage(image, 0, 0, null);
+        } else {
+            super.paint(g);
         }
     }
 }
@@ -33,4 +82,4 @@ public class ImageCanvas extends Canvas {
  * //System.out.printf("Writing color %d %d %d%n", R, G, B); Color c = new
  * Color(R, G, B); Graphics g = originalCanvas.getGraphics(); g.setColor(c);
  * g.fillRect(x, imgHeight - y, 1, 1); } }
- */
\ No newline at end of file
+ */
@@ -0,0 +1,433 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures sample peak, true peak, RMS and loudness of a recording in one streaming pass.
+ * <p>
+ * Loudness follows ITU-R BS.1770 / EBU R128: every channel is K-weighted by a high-shelf and a
+ * high-pass biquad, whose coefficients are derived for the file's sample rate. The weighted
+ * energy is summed in 100 ms steps, 400 ms blocks overlap by 75%, and the integrated loudness
+ * averages the blocks that pass the absolute gate of -70 LUFS and then the relative gate 10 LU
+ * below the mean of those. True peak is the highest sample of the signal interpolated four
+ * times by a 48-tap polyphase windowed-sinc filter.
+ * <p>
+ * The meter keeps one {@code double} per 100 ms plus one entry per window of the time series,
+ * so its memory is a small fraction of the samples even for hours of audio.
+ * <p>
+ * Channel weights follow the speaker positions of the file's channel mask: the LFE is left
+ * out, side speakers and the back pair of a 5.x layout (which has a centre and no sides) are
+ * surrounds weighted by 1.41, and every other speaker, including the rear pair of quad or
+ * 7.1, counts once. Without a mask the standard WAV channel order is assumed: the fourth
+ * channel of a file with four or more is the LFE, and the fifth and sixth are surrounds.
+ */
+public class LoudnessMeter {
+
+    /** Length of a time-series window used by {@link #measure(WavSampleReader)}. */
+    public static final double DEFAULT_WINDOW_SECONDS = 1.0;
+
+    private static final double ABSOLUTE_GATE = -70;
+    private static final double RELATIVE_GATE = -10;
+
+    /** Number of 100 ms steps in a 400 ms gating block. */
+    private static final int STEPS_PER_BLOCK = 4;
+
+    private static final int OVERSAMPLING = 4;
+    private static final int TAPS_PER_PHASE = 12;
+
+    /** Interpolation filter, indexed [phase][tap]; tap k of phase p weights the sample k frames back. */
+    private static final double[][] PHASES = interpolationFilter();
+
+    /** Largest gain of any phase, the sum of its absolute taps: no output exceeds the input peak times this. */
+    private static final double MAX_PHASE_GAIN = maxPhaseGain();
+
+    private final int numChn;
+    private final int smpRate;
+    private final double[] channelWeight;
+
+    // K-weighting: high shelf (b0, b1, b2, a1, a2) then high pass, with state per channel
+    private final double[] shelf;
+    private final double[] highPass;
+    private final double[][] state;
+
+    // Running totals over the file
+    private final double[] peak;
+    private final double[] truePeak;
+    private final double[] squares;
+    private long frames;
+
+    // Last samples of each channel, oldest first, for the interpolation filter
+    private final double[][] history;
+    private double[] line = new double[0];
+
+    // The 100 ms step being filled, and the channel-weighted energies of the steps so far
+    private final int stepFrames;
+    private int stepLeft;
+    private final double[] stepEnergy;
+    private double[] steps = new double[256];
+    private int stepCount;
+
+    // The time-series window being filled
+    private final int windowFrames;
+    private int windowLeft;
+    private final double[] windowPeak;
+    private final double[] windowSquares;
+    private final double[] windowEnergy;
+    private final List<LoudnessReport.Window> windows = new ArrayList<>();
+
+    /**
+     * Creates a meter for channels in the standard WAV order.
+     *
+     * @param  numChn         the number of channels.
+     * @param  smpRate        the sample rate in Hz.
+     * @param  windowSeconds  the length of each window of the time series.
+     */
+    public LoudnessMeter(int numChn, int smpRate, double windowSeconds) {
+        this(numChn, smpRate, 0, windowSeconds);
+    }
+
+    /**
+     * @param  numChn         the number of channels.
+     * @param  smpRate        the sample rate in Hz.
+     * @param  channelMask    the speaker positions, as in {@link WavFormat#channelMask}; 0 for
+     *                        the standard WAV order.
+     * @param  windowSeconds  the length of each window of the time series.
+     */
+    public LoudnessMeter(int numChn, int smpRate, int channelMask, double windowSeconds) {
+        if (numChn <= 0 || smpRate <= 0 || !(windowSeconds > 0)) {
+            throw new IllegalArgumentException("Invalid meter: " + numChn + " channels, " + smpRate + " Hz, "
+                    + windowSeconds + " s windows");
+        }
+        this.numChn = numChn;
+        this.smpRate = smpRate;
+        this.channelWeight = channelWeights(numChn, channelMask);
+
+        // Analog prototypes of the BS.1770 filters, mapped to this rate by the bilinear transform
+        double k = Math.tan(Math.PI * 1681.974450955533 / smpRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        this.shelf = new double[] {(vh + vb * k / q + k * k) / a0, 2 * (k * k - vh) / a0, (vh - vb * k / q + k * k) / a0,
+                2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0};
+        k = Math.tan(Math.PI * 38.13547087602444 / smpRate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        this.highPass = new double[] {1, -2, 1, 2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0};
+        this.state = new double[numChn][4];
+
+        this.peak = new double[numChn];
+        this.truePeak = new double[numChn];
+        this.squares = new double[numChn];
+        this.history = new double[numChn][TAPS_PER_PHASE - 1];
+
+        this.stepFrames = Math.max(1, (int) Math.round(smpRate * 0.1));
+        this.stepLeft = stepFrames;
+        this.stepEnergy = new double[numChn];
+
+        this.windowFrames = Math.max(1, (int) Math.round(smpRate * windowSeconds));
+        this.windowLeft = windowFrames;
+        this.windowPeak = new double[numChn];
+        this.windowSquares = new double[numChn];
+        this.windowEnergy = new double[numChn];
+    }
+
+    /** Returns the BS.1770 weight of every channel; see the class comment. */
+    private static double[] channelWeights(int numChn, int channelMask) {
+        double[] weights = new double[numChn];
+        // Without side speakers, the back pair of a layout with a centre is the 5.x surround pair
+        int sides = WavFormat.SPEAKER_SIDE_LEFT | WavFormat.SPEAKER_SIDE_RIGHT;
+        int backs = WavFormat.SPEAKER_BACK_LEFT | WavFormat.SPEAKER_BACK_RIGHT;
+        int surrounds = (channelMask & sides) == 0 && (channelMask & WavFormat.SPEAKER_FRONT_CENTER) != 0
+                ? sides | backs : sides;
+        for (int c = 0; c < numChn; c++) {
+            if (channelMask == 0) {
+                weights[c] = numChn >= 4 && c == 3 ? 0 : (numChn >= 5 && (c == 4 || c == 5) ? 1.41 : 1);
+                continue;
+            }
+            int speaker = WavFormat.speaker(channelMask, c);
+            weights[c] = speaker == WavFormat.SPEAKER_LOW_FREQUENCY ? 0 : ((speaker & surrounds) != 0 ? 1.41 : 1);
+        }
+        return weights;
+    }
+
+    /**
+     * Measures a file from the current position of {@code reader} to the end of its data, with
+     * windows of {@value #DEFAULT_WINDOW_SECONDS} s.
+     *
+     * @param  reader  an open sample reader, normally at frame 0.
+     * @return the report.
+     * @throws IOException if the samples cannot be read.
+     */
+    public static LoudnessReport measure(WavSampleReader reader) throws IOException {
+        return measure(reader, DEFAULT_WINDOW_SECONDS);
+    }
+
+    /**
+     * Measures a file from the current position of {@code reader} to the end of its data.
+     *
+     * @param  reader         an open sample reader, normally at frame 0.
+     * @param  windowSeconds  the length of each window of the time series.
+     * @return the report.
+     * @throws IOException if the samples cannot be read.
+     */
+    public static LoudnessReport measure(WavSampleReader reader, double windowSeconds) throws IOException {
+        WavFormat format = reader.getFormat();
+        LoudnessMeter meter = new LoudnessMeter(format.numChn, format.smpRate, format.channelMask, windowSeconds);
+        float[][] block = new float[format.numChn][WavSampleReader.FRAMES_PER_READ];
+        int frames;
+        while ((frames = reader.readFrames(block, 0, WavSampleReader.FRAMES_PER_READ)) > 0) {
+            meter.add(block, 0, frames);
+        }
+        return meter.finish();
+    }
+
+    /**
+     * Opens and measures a whole file.
+     *
+     * @param  wav            the WAV file.
+     * @param  windowSeconds  the length of each window of the time series.
+     * @return the report.
+     * @throws IOException if the file cannot be read or is not a supported WAV file.
+     */
+    public static LoudnessReport measure(Path wav, double windowSeconds) throws IOException {
+        try (WavSampleReader reader = WavSampleReader.open(wav)) {
+            return measure(reader, windowSeconds);
+        }
+    }
+
+    /**
+     * Adds the next frames of the recording.
+     *
+     * @param  channels  one array of normalized samples per channel.
+     * @param  offset    the index in each array of the first frame.
+     * @param  count     the number of frames.
+     */
+    public void add(float[][] channels, int offset, int count) {
+        int done = 0;
+        while (done < count) {
+            // Segments end where a step or a window ends, so the inner loops need no checks
+            int length = Math.min(count - done, Math.min(stepLeft, windowLeft));
+            for (int c = 0; c < numChn; c++) {
+                measureSegment(c, channels[c], offset + done, length);
+            }
+            done += length;
+            frames += length;
+            stepLeft -= length;
+            windowLeft -= length;
+            if (stepLeft == 0) {
+                endStep();
+            }
+            if (windowLeft == 0) {
+                endWindow(windowFrames);
+            }
+        }
+    }
+
+    private void measureSegment(int c, float[] samples, int offset, int length) {
+        double[] z = state[c];
+        double s0 = shelf[0], s1 = shelf[1], s2 = shelf[2], s3 = shelf[3], s4 = shelf[4];
+        double h3 = highPass[3], h4 = highPass[4];
+        double z0 = z[0], z1 = z[1], z2 = z[2], z3 = z[3];
+        double max = 0;
+        double sum = 0;
+        double energy = 0;
+        for (int i = offset; i < offset + length; i++) {
+            double x = samples[i];
+            max = Math.max(max, Math.abs(x));
+            sum += x * x;
+            // Two transposed direct form II biquads; the high pass has b = {1, -2, 1}
+            double y = s0 * x + z0;
+            z0 = s1 * x - s3 * y + z1;
+            z1 = s2 * x - s4 * y;
+            double w = y + z2;
+            z2 = -2 * y - h3 * w + z3;
+            z3 = y - h4 * w;
+            energy += w * w;
+        }
+        z[0] = z0;
+        z[1] = z1;
+        z[2] = z2;
+        z[3] = z3;
+        windowPeak[c] = Math.max(windowPeak[c], max);
+        windowSquares[c] += sum;
+        windowEnergy[c] += energy;
+        stepEnergy[c] += energy;
+        squares[c] += sum;
+        peak[c] = Math.max(peak[c], max);
+        truePeak[c] = Math.max(truePeak[c], interpolatedPeak(c, samples, offset, length, max));
+    }
+
+    /**
+     * Returns the highest absolute value of the four-times oversampled segment, carrying the
+     * filter history of the channel over from the previous segment. Segments too quiet to
+     * raise the channel's true peak are not interpolated, which skips most of a typical file.
+     */
+    private double interpolatedPeak(int c, float[] samples, int offset, int length, double segmentPeak) {
+        int past = TAPS_PER_PHASE - 1;
+        if (line.length < past + length) {
+            line = new double[past + length];
+        }
+        double[] h = history[c];
+        System.arraycopy(h, 0, line, 0, past);
+        double inputPeak = segmentPeak;
+        for (int i = 0; i < past; i++) {
+            inputPeak = Math.max(inputPeak, Math.abs(h[i]));
+        }
+        for (int i = 0; i < length; i++) {
+            line[past + i] = samples[offset + i];
+        }
+        if (inputPeak * MAX_PHASE_GAIN <= truePeak[c]) {
+            System.arraycopy(line, length, h, 0, past);
+            return 0;
+        }
+        double max = 0;
+        for (int i = past; i < past + length; i++) {
+            for (double[] phase : PHASES) {
+                double sum = 0;
+                for (int k = 0; k < TAPS_PER_PHASE; k++) {
+                    sum += phase[k] * line[i - k];
+                }
+                max = Math.max(max, Math.abs(sum));
+            }
+        }
+        System.arraycopy(line, length, h, 0, past);
+        return max;
+    }
+
+    /** Closes a 100 ms step and records its channel-weighted energy. */
+    private void endStep() {
+        double energy = 0;
+        for (int c = 0; c < numChn; c++) {
+            energy += channelWeight[c] * stepEnergy[c];
+            stepEnergy[c] = 0;
+        }
+        if (stepCount == steps.length) {
+            steps = Arrays.copyOf(steps, 2 * stepCount);
+        }
+        steps[stepCount++] = energy / stepFrames;
+        stepLeft = stepFrames;
+    }
+
+    /** Closes a window of the time series that holds {@code length} frames. */
+    private void endWindow(int length) {
+        double max = 0;
+        double sum = 0;
+        double energy = 0;
+        for (int c = 0; c < numChn; c++) {
+            max = Math.max(max, windowPeak[c]);
+            sum += windowSquares[c];
+            energy += channelWeight[c] * windowEnergy[c];
+            windowPeak[c] = 0;
+            windowSquares[c] = 0;
+            windowEnergy[c] = 0;
+        }
+        windows.add(new LoudnessReport.Window(frames - length, length, amplitudeDb(max),
+                powerDb(sum / ((double) length * numChn)), loudness(energy / length)));
+        windowLeft = windowFrames;
+    }
+
+    /**
+     * Closes the last partial window and computes the gated loudness. The last partial 100 ms
+     * step is not part of any gating block.
+     *
+     * @return the report.
+     */
+    public LoudnessReport finish() {
+        if (windowLeft < windowFrames) {
+            endWindow(windowFrames - windowLeft);
+        }
+
+        // Mean-square energies of the overlapping 400 ms blocks
+        int blocks = Math.max(0, stepCount - STEPS_PER_BLOCK + 1);
+        double[] block = new double[blocks];
+        double maxMomentary = Double.NEGATIVE_INFINITY;
+        for (int b = 0; b < blocks; b++) {
+            double sum = 0;
+            for (int s = b; s < b + STEPS_PER_BLOCK; s++) {
+                sum += steps[s];
+            }
+            block[b] = sum / STEPS_PER_BLOCK;
+            maxMomentary = Math.max(maxMomentary, loudness(block[b]));
+        }
+        double absoluteMean = gatedMean(block, ABSOLUTE_GATE);
+        double integrated = Double.NEGATIVE_INFINITY;
+        if (absoluteMean > 0) {
+            integrated = loudness(gatedMean(block, Math.max(ABSOLUTE_GATE, loudness(absoluteMean) + RELATIVE_GATE)));
+        }
+
+        double[] samplePeakDb = new double[numChn];
+        double[] truePeakDb = new double[numChn];
+        double[] rmsDb = new double[numChn];
+        for (int c = 0; c < numChn; c++) {
+            samplePeakDb[c] = amplitudeDb(peak[c]);
+            // The interpolation filter can land just below a lone full-scale sample
+            truePeakDb[c] = amplitudeDb(Math.max(peak[c], truePeak[c]));
+            rmsDb[c] = frames == 0 ? Double.NEGATIVE_INFINITY : powerDb(squares[c] / frames);
+        }
+        return new LoudnessReport(numChn, smpRate, frames, samplePeakDb, truePeakDb, rmsDb, integrated, maxMomentary, windows);
+    }
+
+    /** Returns the mean energy of the blocks louder than {@code gate} LUFS, 0 if there are none. */
+    private static double gatedMean(double[] blocks, double gate) {
+        double sum = 0;
+        int count = 0;
+        for (double energy : blocks) {
+            if (loudness(energy) > gate) {
+                sum += energy;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    private static double loudness(double energy) {
+        return energy > 0 ? -0.691 + 10 * Math.log10(energy) : Double.NEGATIVE_INFINITY;
+    }
+
+    private static double amplitudeDb(double amplitude) {
+        return amplitude > 0 ? 20 * Math.log10(amplitude) : Double.NEGATIVE_INFINITY;
+    }
+
+    private static double powerDb(double power) {
+        return power > 0 ? 10 * Math.log10(power) : Double.NEGATIVE_INFINITY;
+    }
+
+    private static double maxPhaseGain() {
+        double max = 0;
+        for (double[] phase : PHASES) {
+            double gain = 0;
+            for (double tap : phase) {
+                gain += Math.abs(tap);
+            }
+            max = Math.max(max, gain);
+        }
+        return max;
+    }
+
+    /**
+     * Designs the four-phase interpolator: a sinc cut off at the original Nyquist frequency
+     * under a Hann window, 48 taps long, with each phase scaled to unity gain at DC.
+     */
+    private static double[][] interpolationFilter() {
+        int taps = OVERSAMPLING * TAPS_PER_PHASE;
+        double center = taps / 2.0;
+        double[][] phases = new double[OVERSAMPLING][TAPS_PER_PHASE];
+        for (int p = 0; p < OVERSAMPLING; p++) {
+            double gain = 0;
+            for (int k = 0; k < TAPS_PER_PHASE; k++) {
+                double t = (k * OVERSAMPLING + p - center) / OVERSAMPLING;
+                double sinc = t == 0 ? 1 : Math.sin(Math.PI * t) / (Math.PI * t);
+                double window = 0.5 + 0.5 * Math.cos(Math.PI * (k * OVERSAMPLING + p - center) / (center + 1));
+                phases[p][k] = sinc * window;
+                gain += phases[p][k];
+            }
+            for (int k = 0; k < TAPS_PER_PHASE; k++) {
+                phases[p][k] /= gain;
+            }
+        }
+        return phases;
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The measurements of one file made by a {@link LoudnessMeter}.
+ * <p>
+ * Levels are in dB: sample peak, true peak and RMS relative to full scale, where a full-scale
+ * square wave reads 0 dB (so a full-scale sine has an RMS of about -3 dB), and loudness in
+ * LUFS. Silence reads {@link Double#NEGATIVE_INFINITY}.
+ */
+public class LoudnessReport {
+
+    /**
+     * The levels of one stretch of the time series.
+     */
+    public static class Window {
+        public final long startFrame;
+        public final int frames;
+
+        /** Highest sample peak of any channel, in dBFS. */
+        public final double peakDb;
+
+        /** RMS of all channels together, in dBFS. */
+        public final double rmsDb;
+
+        /** Ungated loudness of the window, in LUFS. */
+        public final double loudness;
+
+        Window(long startFrame, int frames, double peakDb, double rmsDb, double loudness) {
+            this.startFrame = startFrame;
+            this.frames = frames;
+            this.peakDb = peakDb;
+            this.rmsDb = rmsDb;
+            this.loudness = loudness;
+        }
+    }
+
+    public final int numChn;
+    public final int smpRate;
+    public final long frameCount;
+
+    /** Per channel. */
+    public final double[] samplePeakDb;
+    public final double[] truePeakDb;
+    public final double[] rmsDb;
+
+    /** Gated loudness of the whole file, in LUFS. */
+    public final double integratedLoudness;
+
+    /** Highest loudness of any 400 ms block, in LUFS. */
+    public final double maxMomentaryLoudness;
+
+    private final List<Window> windows;
+
+    LoudnessReport(int numChn, int smpRate, long frameCount, double[] samplePeakDb, double[] truePeakDb, double[] rmsDb,
+                   double integratedLoudness, double maxMomentaryLoudness, List<Window> windows) {
+        this.numChn = numChn;
+        this.smpRate = smpRate;
+        this.frameCount = frameCount;
+        this.samplePeakDb = samplePeakDb;
+        this.truePeakDb = truePeakDb;
+        this.rmsDb = rmsDb;
+        this.integratedLoudness = integratedLoudness;
+        this.maxMomentaryLoudness = maxMomentaryLoudness;
+        this.windows = Collections.unmodifiableList(windows);
+    }
+
+    /** Returns the time series, in order. */
+    public List<Window> getWindows() {
+        return windows;
+    }
+
+    /** Returns the highest true peak of any channel, in dBTP. */
+    public double maxTruePeakDb() {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double peak : truePeakDb) {
+            max = Math.max(max, peak);
+        }
+        return max;
+    }
+
+    /**
+     * Formats the report on one line, such as
+     * {@code I -14.1 LUFS, M max -9.8 LUFS, TP -0.4 dBTP, peak -0.6/-0.9 dBFS, RMS -17.2/-17.8 dBFS}.
+     *
+     * @return the summary.
+     */
+    public String summary() {
+        return String.format(Locale.ROOT, "I %s LUFS, M max %s LUFS, TP %s dBTP, peak %s dBFS, RMS %s dBFS",
+                format(integratedLoudness), format(maxMomentaryLoudness), format(maxTruePeakDb()),
+                join(samplePeakDb), join(rmsDb));
+    }
+
+    /**
+     * Writes the time series as CSV, one window per line.
+     *
+     * @param  path  the file to create or replace.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeCsv(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            out.write("start_s,peak_dbfs,rms_dbfs,loudness_lufs");
+            out.newLine();
+            for (Window window : windows) {
+                out.write(String.format(Locale.ROOT, "%.3f,%s,%s,%s", (double) window.startFrame / smpRate,
+                        format(window.peakDb), format(window.rmsDb), format(window.loudness)));
+                out.newLine();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private static String join(double[] values) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            text.append(i == 0 ? "" : "/").append(format(values[i]));
+        }
+        return text.toString();
+    }
+
+    private static String format(double db) {
+        return db == Double.NEGATIVE_INFINITY ? "-inf" : String.format(Locale.ROOT, "%.1f", db);
+    }
+}
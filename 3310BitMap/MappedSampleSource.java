@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to the samples of a WAV file through memory-mapped views of its {@code data} chunk.
+ * <p>
+ * Any frame can be read in constant time, and the operating system's page cache does the
+ * I/O, so multi-gigabyte recordings can be browsed without copying them onto the heap.
+ * The data chunk is mapped in segments of whole frames, since a single mapping is limited
+ * to 2 GiB.
+ */
+public class MappedSampleSource {
+
+    /** Upper bound on the size of one mapped segment. */
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final WavFormat format;
+    private final PcmDecoder decoder;
+    private final long frameCount;
+    private final int bytesPerSample;
+    private final long framesPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    private MappedSampleSource(WavFormat format, long frameCount, MappedByteBuffer[] segments, long framesPerSegment) throws IOException {
+        this.format = format;
+        this.decoder = PcmDecoder.forFormat(format);
+        this.frameCount = frameCount;
+        this.bytesPerSample = format.bytesPerSample();
+        this.segments = segments;
+        this.framesPerSegment = framesPerSegment;
+    }
+
+    /**
+     * Maps the sample data of a WAV file.
+     *
+     * @param  path  the WAV file.
+     * @return the sample source.
+     * @throws IOException if the file is not a WAV file or cannot be mapped.
+     */
+    public static MappedSampleSource open(Path path) throws IOException {
+        WavFormat format;
+        long dataOffset;
+        long frameCount;
+        try (WavSampleReader reader = WavSampleReader.open(path)) {
+            format = reader.getFormat();
+            dataOffset = reader.getDataOffset();
+            frameCount = reader.getFrameCount();
+        }
+
+        // Mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long framesPerSegment = Math.max(1, MAX_SEGMENT_BYTES / format.blockAlign);
+            int count = (int) ((frameCount + framesPerSegment - 1) / framesPerSegment);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long first = i * framesPerSegment;
+                long frames = Math.min(framesPerSegment, frameCount - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataOffset + first * format.blockAlign, frames * format.blockAlign);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedSampleSource(format, frameCount, segments, framesPerSegment);
+        }
+    }
+
+    public WavFormat getFormat() {
+        return format;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** Returns the length of the recording in seconds. */
+    public double getDuration() {
+        return (double) frameCount / format.smpRate;
+    }
+
+    /**
+     * Converts a time into the index of the frame playing at that time.
+     *
+     * @param  seconds  the time from the start of the recording.
+     * @return the frame index, clamped to {@code [0, frameCount]}.
+     */
+    public long frameAt(double seconds) {
+        long frame = (long) Math.floor(seconds * format.smpRate);
+        return Math.max(0, Math.min(frameCount, frame));
+    }
+
+    /**
+     * Returns one sample at its integer scale, so 16-bit samples range over -32768..32767.
+     *
+     * @param  channel     the channel, from 0 to {@code numChn - 1}.
+     * @param  frameIndex  the frame, from 0 to {@code frameCount - 1}.
+     * @return the sample value.
+     */
+    public int sampleAt(int channel, long frameIndex) {
+        return decoder.intSampleAt(segmentOf(channel, frameIndex), indexOf(channel, frameIndex));
+    }
+
+    /**
+     * Returns one sample normalized to -1..1, whatever the bit depth or encoding.
+     *
+     * @param  channel     the channel, from 0 to {@code numChn - 1}.
+     * @param  frameIndex  the frame, from 0 to {@code frameCount - 1}.
+     * @return the sample value.
+     */
+    public float normalizedSampleAt(int channel, long frameIndex) {
+        return decoder.sampleAt(segmentOf(channel, frameIndex), indexOf(channel, frameIndex));
+    }
+
+    private MappedByteBuffer segmentOf(int channel, long frameIndex) {
+        if (channel < 0 || channel >= format.numChn || frameIndex < 0 || frameIndex >= frameCount) {
+            throw new IndexOutOfBoundsException("Sample " + channel + "/" + frameIndex);
+        }
+        return segments[(int) (frameIndex / framesPerSegment)];
+    }
+
+    private int indexOf(int channel, long frameIndex) {
+        return (int) (frameIndex % framesPerSegment) * format.blockAlign + channel * bytesPerSample;
+    }
+
+    /**
+     * Copies consecutive samples of one channel.
+     *
+     * @param  channel    the channel to copy.
+     * @param  fromFrame  the first frame to copy.
+     * @param  dst        the destination array.
+     * @param  offset     the index in {@code dst} of the first sample.
+     * @param  frames     the number of frames to copy.
+     */
+    public void copy(int channel, long fromFrame, int[] dst, int offset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[offset + i] = sampleAt(channel, fromFrame + i);
+        }
+    }
+
+    /**
+     * Returns a view of the frames between two times. The view is computed, not copied.
+     *
+     * @param  startSeconds     the start of the range.
+     * @param  durationSeconds  the length of the range.
+     * @return the range, clipped to the recording.
+     */
+    public Range range(double startSeconds, double durationSeconds) {
+        long first = frameAt(startSeconds);
+        long last = frameAt(startSeconds + durationSeconds);
+        return new Range(first, last - first);
+    }
+
+    /**
+     * A window of consecutive frames of a {@link MappedSampleSource}.
+     */
+    public class Range {
+        private final long firstFrame;
+        private final long frameCount;
+
+        Range(long firstFrame, long frameCount) {
+            this.firstFrame = firstFrame;
+            this.frameCount = frameCount;
+        }
+
+        public long getFirstFrame() {
+            return firstFrame;
+        }
+
+        public long getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * @param  channel  the channel.
+         * @param  index    the frame within the range, from 0 to {@code frameCount - 1}.
+         * @return the sample value.
+         */
+        public int sampleAt(int channel, long index) {
+            if (index < 0 || index >= frameCount) {
+                throw new IndexOutOfBoundsException("Frame " + index + " outside range of " + frameCount);
+            }
+            return MappedSampleSource.this.sampleAt(channel, firstFrame + index);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Decodes interleaved little-endian WAV frames into one primitive array per channel.
+ * <p>
+ * There is one subclass per sample encoding, each with its own tight loop, so no per-sample
+ * branching on the format is needed. Floating-point output is normalized to -1..1.
+ * Integer output keeps the stored scale of integer formats (16-bit samples range over
+ * -32768..32767) and scales floating-point formats to the full {@code int} range.
+ * Bulk decoding starts at the buffer's position and advances it past the decoded frames.
+ */
+public abstract class PcmDecoder {
+
+    protected final int numChn;
+    protected final int blockAlign;
+    protected final int bytesPerSample;
+
+    PcmDecoder(WavFormat format) {
+        this.numChn = format.numChn;
+        this.blockAlign = format.blockAlign;
+        this.bytesPerSample = format.bytesPerSample();
+    }
+
+    /**
+     * Picks the decoder for a format.
+     *
+     * @param  format  the format of the samples.
+     * @return the decoder.
+     * @throws IOException if the encoding is not supported.
+     */
+    public static PcmDecoder forFormat(WavFormat format) throws IOException {
+        int bytes = format.bytesPerSample();
+        if (format.sampleFormat == WavFormat.FORMAT_PCM) {
+            switch (bytes) {
+                case 1:
+                    return new Unsigned8(format);
+                case 2:
+                    return new Signed16(format);
+                case 3:
+                    return new Signed24(format);
+                case 4:
+                    return new Signed32(format);
+                default:
+                    break;
+            }
+        } else if (format.sampleFormat == WavFormat.FORMAT_IEEE_FLOAT) {
+            switch (bytes) {
+                case 4:
+                    return new Float32(format);
+                case 8:
+                    return new Float64(format);
+                default:
+                    break;
+            }
+        }
+        throw new IOException("Unsupported sample encoding: format " + format.sampleFormat + ", " + bytes * 8 + " bits");
+    }
+
+    /**
+     * Decodes {@code frames} frames into normalized samples.
+     *
+     * @param  src     the frames, starting at the buffer's position.
+     * @param  frames  the number of frames to decode.
+     * @param  dst     one array per channel; extra channels in the source are skipped.
+     * @param  offset  the index in each array of the first decoded frame.
+     */
+    public void decode(ByteBuffer src, int frames, float[][] dst, int offset) {
+        src.order(ByteOrder.LITTLE_ENDIAN);
+        int base = src.position();
+        for (int c = 0; c < numChn && c < dst.length; c++) {
+            decodeChannel(src, base + c * bytesPerSample, frames, dst[c], offset);
+        }
+        src.position(base + frames * blockAlign);
+    }
+
+    /**
+     * Decodes {@code frames} frames into integer samples.
+     *
+     * @param  src     the frames, starting at the buffer's position.
+     * @param  frames  the number of frames to decode.
+     * @param  dst     one array per channel; extra channels in the source are skipped.
+     * @param  offset  the index in each array of the first decoded frame.
+     */
+    public void decode(ByteBuffer src, int frames, int[][] dst, int offset) {
+        src.order(ByteOrder.LITTLE_ENDIAN);
+        int base = src.position();
+        for (int c = 0; c < numChn && c < dst.length; c++) {
+            decodeChannel(src, base + c * bytesPerSample, frames, dst[c], offset);
+        }
+        src.position(base + frames * blockAlign);
+    }
+
+    /**
+     * Decodes the normalized sample starting at an absolute byte index.
+     *
+     * @param  src    a little-endian buffer.
+     * @param  index  the index of the sample's first byte.
+     * @return the sample, normally within -1..1.
+     */
+    public abstract float sampleAt(ByteBuffer src, int index);
+
+    /**
+     * Decodes the integer sample starting at an absolute byte index.
+     *
+     * @param  src    a little-endian buffer.
+     * @param  index  the index of the sample's first byte.
+     * @return the sample at its integer scale.
+     */
+    public abstract int intSampleAt(ByteBuffer src, int index);
+
+    /** Decodes every {@code blockAlign}-th sample from {@code index} into normalized floats. */
+    abstract void decodeChannel(ByteBuffer src, int index, int frames, float[] dst, int offset);
+
+    /** Decodes every {@code blockAlign}-th sample from {@code index} into ints. */
+    abstract void decodeChannel(ByteBuffer src, int index, int frames, int[] dst, int offset);
+
+    private static class Unsigned8 extends PcmDecoder {
+        private static final float SCALE = 1f / 128;
+
+        Unsigned8(WavFormat format) {
+            super(format);
+        }
+
+        @Override
+        public float sampleAt(ByteBuffer src, int index) {
+            return intSampleAt(src, index) * SCALE;
+        }
+
+        @Override
+        public int intSampleAt(ByteBuffer src, int index) {
+            // 8-bit WAV samples are unsigned with silence at 128
+            return (src.get(index) & 0xFF) - 128;
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, float[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = ((src.get(index) & 0xFF) - 128) * SCALE;
+            }
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, int[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = (src.get(index) & 0xFF) - 128;
+            }
+        }
+    }
+
+    private static class Signed16 extends PcmDecoder {
+        private static final float SCALE = 1f / 32768;
+
+        Signed16(WavFormat format) {
+            super(format);
+        }
+
+        @Override
+        public float sampleAt(ByteBuffer src, int index) {
+            return src.getShort(index) * SCALE;
+        }
+
+        @Override
+        public int intSampleAt(ByteBuffer src, int index) {
+            return src.getShort(index);
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, float[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = src.getShort(index) * SCALE;
+            }
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, int[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = src.getShort(index);
+            }
+        }
+    }
+
+    private static class Signed24 extends PcmDecoder {
+        private static final float SCALE = 1f / 8388608;
+
+        Signed24(WavFormat format) {
+            super(format);
+        }
+
+        @Override
+        public float sampleAt(ByteBuffer src, int index) {
+            return intSampleAt(src, index) * SCALE;
+        }
+
+        @Override
+        public int intSampleAt(ByteBuffer src, int index) {
+            return BinaryReader.i24LE(src, index);
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, float[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = BinaryReader.i24LE(src, index) * SCALE;
+            }
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, int[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = BinaryReader.i24LE(src, index);
+            }
+        }
+    }
+
+    private static class Signed32 extends PcmDecoder {
+        private static final float SCALE = 1f / 2147483648f;
+
+        Signed32(WavFormat format) {
+            super(format);
+        }
+
+        @Override
+        public float sampleAt(ByteBuffer src, int index) {
+            return src.getInt(index) * SCALE;
+        }
+
+        @Override
+        public int intSampleAt(ByteBuffer src, int index) {
+            return src.getInt(index);
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, float[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = src.getInt(index) * SCALE;
+            }
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, int[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = src.getInt(index);
+            }
+        }
+    }
+
+    private static class Float32 extends PcmDecoder {
+
+        Float32(WavFormat format) {
+            super(format);
+        }
+
+        @Override
+        public void decode(ByteBuffer src, int frames, float[][] dst, int offset) {
+            if (numChn == 1 && dst.length > 0) {
+                // Mono float data is already the output layout, so copy it in bulk
+                src.order(ByteOrder.LITTLE_ENDIAN);
+                FloatBuffer floats = src.asFloatBuffer();
+                floats.get(dst[0], offset, frames);
+                src.position(src.position() + frames * blockAlign);
+                return;
+            }
+            super.decode(src, frames, dst, offset);
+        }
+
+        @Override
+        public float sampleAt(ByteBuffer src, int index) {
+            return src.getFloat(index);
+        }
+
+        @Override
+        public int intSampleAt(ByteBuffer src, int index) {
+            return toInt(src.getFloat(index));
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, float[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = src.getFloat(index);
+            }
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, int[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = toInt(src.getFloat(index));
+            }
+        }
+    }
+
+    private static class Float64 extends PcmDecoder {
+
+        Float64(WavFormat format) {
+            super(format);
+        }
+
+        @Override
+        public float sampleAt(ByteBuffer src, int index) {
+            return (float) src.getDouble(index);
+        }
+
+        @Override
+        public int intSampleAt(ByteBuffer src, int index) {
+            return toInt(src.getDouble(index));
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, float[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = (float) src.getDouble(index);
+            }
+        }
+
+        @Override
+        void decodeChannel(ByteBuffer src, int index, int frames, int[] dst, int offset) {
+            for (int i = 0; i < frames; i++, index += blockAlign) {
+                dst[offset + i] = toInt(src.getDouble(index));
+            }
+        }
+    }
+
+    /** Scales a normalized sample to the {@code int} range, saturating out-of-range values. */
+    private static int toInt(double sample) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(sample * 2147483648.0)));
+    }
+}
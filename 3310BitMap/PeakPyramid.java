@@ -0,0 +1,469 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A multi-resolution summary of a WAV file for drawing its waveform at any zoom level.
+ * <p>
+ * Level 0 holds the minimum, maximum and RMS of every {@value #BASE_BUCKET} frames of each
+ * channel; each following level merges pairs of buckets from the one below, down to a single
+ * bucket. Drawing a range of the file picks the level whose buckets are just finer than one
+ * screen pixel, so the work is proportional to the screen width rather than the length of
+ * the file, and short transients still show up as peaks. The pyramid is built in one
+ * streaming pass over the samples and can be stored in a sidecar file next to the WAV file.
+ */
+public class PeakPyramid {
+
+    /** Number of frames summarized by one level-0 bucket. */
+    public static final int BASE_BUCKET = 256;
+
+    private static final int MAGIC = 0x4B414550; // "PEAK" little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+
+    private final int numChn;
+    private final int smpRate;
+    private final long frameCount;
+
+    // Indexed [level][channel][bucket]; samples are normalized to -1..1
+    private final float[][][] min;
+    private final float[][][] max;
+    private final float[][][] rms;
+
+    private PeakPyramid(int numChn, int smpRate, long frameCount, float[][][] min, float[][][] max, float[][][] rms) {
+        this.numChn = numChn;
+        this.smpRate = smpRate;
+        this.frameCount = frameCount;
+        this.min = min;
+        this.max = max;
+        this.rms = rms;
+    }
+
+    /**
+     * Builds the pyramid from the current position of {@code reader} to the end of its data.
+     *
+     * @param  reader  an open sample reader, normally at frame 0.
+     * @return the pyramid.
+     * @throws IOException if the samples cannot be read.
+     */
+    public static PeakPyramid build(WavSampleReader reader) throws IOException {
+        WavFormat format = reader.getFormat();
+        Builder builder = new Builder(format.numChn, format.smpRate, reader.getFrameCount() - reader.getFramePosition());
+        float[][] block = new float[format.numChn][WavSampleReader.FRAMES_PER_READ];
+        int frames;
+        while ((frames = reader.readFrames(block, 0, WavSampleReader.FRAMES_PER_READ)) > 0) {
+            builder.add(block, frames);
+        }
+        return builder.finish();
+    }
+
+    /**
+     * Accumulates level 0 block by block, then merges the coarser levels. Use it directly to
+     * summarize samples produced block by block, such as the output of an effect.
+     */
+    public static final class Builder {
+        private final int numChn;
+        private final int smpRate;
+        private final long frameCount;
+        private final int buckets;
+        private final float[][] min0;
+        private final float[][] max0;
+        private final float[][] squares0;
+        private long frame;
+
+        /**
+         * @param  numChn      the number of channels.
+         * @param  smpRate     the sample rate, kept for time-based queries.
+         * @param  frameCount  the total number of frames that will be added.
+         */
+        public Builder(int numChn, int smpRate, long frameCount) {
+            this.numChn = numChn;
+            this.smpRate = smpRate;
+            this.frameCount = frameCount;
+            this.buckets = (int) bucketCount(frameCount);
+            this.min0 = new float[numChn][buckets];
+            this.max0 = new float[numChn][buckets];
+            this.squares0 = new float[numChn][buckets];
+        }
+
+        /**
+         * Adds the next frames; the mean square is kept until the coarser levels are merged.
+         *
+         * @param  block   one array of normalized samples per channel, starting at index 0.
+         * @param  frames  the number of frames in the block.
+         */
+        public void add(float[][] block, int frames) {
+            if (frames > frameCount - frame) {
+                throw new IllegalStateException("More than the " + frameCount + " frames the pyramid was sized for");
+            }
+            for (int c = 0; c < numChn; c++) {
+                float[] samples = block[c];
+                float[] lo = min0[c];
+                float[] hi = max0[c];
+                float[] sq = squares0[c];
+                for (int i = 0; i < frames; i++) {
+                    long f = frame + i;
+                    int bucket = (int) (f / BASE_BUCKET);
+                    float s = samples[i];
+                    if (f % BASE_BUCKET == 0) {
+                        lo[bucket] = s;
+                        hi[bucket] = s;
+                    } else {
+                        lo[bucket] = Math.min(lo[bucket], s);
+                        hi[bucket] = Math.max(hi[bucket], s);
+                    }
+                    sq[bucket] += s * s;
+                }
+            }
+            frame += frames;
+        }
+
+        /**
+         * Completes the pyramid. Frames that were never added read as silence.
+         *
+         * @return the pyramid.
+         */
+        public PeakPyramid finish() {
+            int levels = 1;
+            for (int n = buckets; n > 1; n = (n + 1) / 2) {
+                levels++;
+            }
+            float[][][] min = new float[levels][][];
+            float[][][] max = new float[levels][][];
+            float[][][] rms = new float[levels][][];
+            min[0] = min0;
+            max[0] = max0;
+            rms[0] = squares0;
+            for (int c = 0; c < numChn; c++) {
+                for (int b = 0; b < buckets; b++) {
+                    rms[0][c][b] /= framesIn(frameCount, BASE_BUCKET, b);
+                }
+            }
+            for (int level = 1; level < levels; level++) {
+                int size = BASE_BUCKET << level;
+                int half = size >> 1;
+                min[level] = new float[numChn][];
+                max[level] = new float[numChn][];
+                rms[level] = new float[numChn][];
+                for (int c = 0; c < numChn; c++) {
+                    float[] lo = min[level - 1][c];
+                    float[] hi = max[level - 1][c];
+                    float[] sq = rms[level - 1][c];
+                    int count = (lo.length + 1) / 2;
+                    min[level][c] = new float[count];
+                    max[level][c] = new float[count];
+                    rms[level][c] = new float[count];
+                    for (int b = 0; b < count; b++) {
+                        int a = 2 * b;
+                        if (a + 1 < lo.length) {
+                            long na = framesIn(frameCount, half, a);
+                            long nb = framesIn(frameCount, half, a + 1);
+                            min[level][c][b] = Math.min(lo[a], lo[a + 1]);
+                            max[level][c][b] = Math.max(hi[a], hi[a + 1]);
+                            rms[level][c][b] = (float) ((sq[a] * (double) na + sq[a + 1] * (double) nb) / (na + nb));
+                        } else {
+                            min[level][c][b] = lo[a];
+                            max[level][c][b] = hi[a];
+                            rms[level][c][b] = sq[a];
+                        }
+                    }
+                }
+            }
+
+            for (float[][] level : rms) {
+                for (float[] channel : level) {
+                    for (int b = 0; b < channel.length; b++) {
+                        channel[b] = (float) Math.sqrt(channel[b]);
+                    }
+                }
+            }
+            return new PeakPyramid(numChn, smpRate, frameCount, min, max, rms);
+        }
+    }
+
+    /** Returns the number of frames in bucket {@code b} of a level with the given bucket size. */
+    private static long framesIn(long frameCount, long bucketSize, int b) {
+        return Math.max(1, Math.min(bucketSize, frameCount - b * bucketSize));
+    }
+
+    /**
+     * Returns the sidecar file used for a WAV file: the same name with {@code .peaks} appended.
+     *
+     * @param  wav  the WAV file.
+     * @return the sidecar path.
+     */
+    public static Path sidecarFor(Path wav) {
+        return wav.resolveSibling(wav.getFileName() + ".peaks");
+    }
+
+    /**
+     * Loads the sidecar of a WAV file, or builds the pyramid and writes the sidecar when it is
+     * missing or older than the WAV file.
+     *
+     * @param  wav  the WAV file.
+     * @return the pyramid.
+     * @throws IOException if the WAV file cannot be read or the sidecar cannot be written.
+     */
+    public static PeakPyramid loadOrBuild(Path wav) throws IOException {
+        Path sidecar = sidecarFor(wav);
+        if (Files.exists(sidecar)
+                && Files.getLastModifiedTime(sidecar).compareTo(Files.getLastModifiedTime(wav)) >= 0) {
+            try {
+                return read(sidecar);
+            } catch (IOException | RuntimeException ex) {
+                // A damaged sidecar is rebuilt below
+            }
+        }
+        PeakPyramid pyramid;
+        try (WavSampleReader reader = WavSampleReader.open(wav)) {
+            pyramid = build(reader);
+        }
+        pyramid.write(sidecar);
+        return pyramid;
+    }
+
+    public int getChannelCount() {
+        return numChn;
+    }
+
+    public int getSampleRate() {
+        return smpRate;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getLevelCount() {
+        return min.length;
+    }
+
+    /** Returns the number of frames summarized by one bucket of {@code level}. */
+    public long bucketSize(int level) {
+        return (long) BASE_BUCKET << level;
+    }
+
+    public int bucketCount(int level) {
+        return min[level][0].length;
+    }
+
+    public float min(int level, int channel, int bucket) {
+        return min[level][channel][bucket];
+    }
+
+    public float max(int level, int channel, int bucket) {
+        return max[level][channel][bucket];
+    }
+
+    public float rms(int level, int channel, int bucket) {
+        return rms[level][channel][bucket];
+    }
+
+    /**
+     * Returns the coarsest level whose buckets are no wider than {@code framesPerPixel}.
+     *
+     * @param  framesPerPixel  the number of frames one pixel covers.
+     * @return the level, 0 when even level 0 is coarser than a pixel.
+     */
+    public int levelFor(double framesPerPixel) {
+        int level = 0;
+        while (level + 1 < getLevelCount() && bucketSize(level + 1) <= framesPerPixel) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Summarizes frames {@code [firstFrame, lastFrame)} of one channel into {@code pixels} columns.
+     * Each column gets the minimum, maximum and RMS of the buckets that fall inside it.
+     *
+     * @param  channel     the channel to summarize.
+     * @param  firstFrame  the first frame of the range.
+     * @param  lastFrame   the end of the range, exclusive.
+     * @param  pixels      the number of columns.
+     * @param  outMin      receives the minimum of every column.
+     * @param  outMax      receives the maximum of every column.
+     * @param  outRms      receives the RMS of every column; may be {@code null}.
+     */
+    public void query(int channel, long firstFrame, long lastFrame, int pixels,
+                      float[] outMin, float[] outMax, float[] outRms) {
+        double framesPerPixel = (double) (lastFrame - firstFrame) / pixels;
+        int level = levelFor(framesPerPixel);
+        long size = bucketSize(level);
+        float[] lo = min[level][channel];
+        float[] hi = max[level][channel];
+        float[] r = rms[level][channel];
+
+        for (int x = 0; x < pixels; x++) {
+            long from = firstFrame + (long) (x * framesPerPixel);
+            long to = firstFrame + (long) ((x + 1) * framesPerPixel);
+            int b0 = (int) Math.min(lo.length - 1, Math.max(0, from / size));
+            int b1 = (int) Math.min(lo.length - 1, Math.max(b0, (to - 1) / size));
+            float columnMin = lo[b0];
+            float columnMax = hi[b0];
+            double squares = 0;
+            for (int b = b0; b <= b1; b++) {
+                columnMin = Math.min(columnMin, lo[b]);
+                columnMax = Math.max(columnMax, hi[b]);
+                squares += (double) r[b] * r[b];
+            }
+            outMin[x] = columnMin;
+            outMax[x] = columnMax;
+            if (outRms != null) {
+                outRms[x] = (float) Math.sqrt(squares / (b1 - b0 + 1));
+            }
+        }
+    }
+
+    /**
+     * Stores the pyramid in a sidecar file.
+     *
+     * @param  path  the file to create or replace.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(numChn).putInt(smpRate).putLong(frameCount)
+                    .putInt(BASE_BUCKET).putInt(getLevelCount());
+            while (buffer.position() < HEADER_SIZE) {
+                buffer.put((byte) 0);
+            }
+            for (int level = 0; level < getLevelCount(); level++) {
+                for (int c = 0; c < numChn; c++) {
+                    buffer = writeFloats(channel, buffer, min[level][c]);
+                    buffer = writeFloats(channel, buffer, max[level][c]);
+                    buffer = writeFloats(channel, buffer, rms[level][c]);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static ByteBuffer writeFloats(FileChannel channel, ByteBuffer buffer, float[] values) throws IOException {
+        int done = 0;
+        while (done < values.length) {
+            if (buffer.remaining() < 4) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            FloatBuffer floats = buffer.asFloatBuffer();
+            int n = Math.min(floats.remaining(), values.length - done);
+            floats.put(values, done, n);
+            buffer.position(buffer.position() + n * 4);
+            done += n;
+        }
+        return buffer;
+    }
+
+    /**
+     * Loads a pyramid from a sidecar file written by {@link #write(Path)}.
+     *
+     * @param  path  the sidecar file.
+     * @return the pyramid.
+     * @throws IOException if the file cannot be read or is not a pyramid of this version.
+     */
+    public static PeakPyramid read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(HEADER_SIZE);
+            fill(channel, buffer);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a peak sidecar of version " + VERSION + ": " + path);
+            }
+            int numChn = buffer.getInt();
+            int smpRate = buffer.getInt();
+            long frameCount = buffer.getLong();
+            int baseBucket = buffer.getInt();
+            int levels = buffer.getInt();
+            // WAV channel counts are 16 bits and bucket arrays are int-indexed, which also keeps
+            // the size computation below from overflowing
+            if (baseBucket != BASE_BUCKET || numChn <= 0 || numChn > 0xFFFF || frameCount < 0
+                    || bucketCount(frameCount) > Integer.MAX_VALUE || levels != levelCount(frameCount)
+                    || channel.size() != fileSize(numChn, frameCount)) {
+                throw new IOException("Unsupported or damaged peak sidecar: " + path);
+            }
+
+            float[][][] min = new float[levels][numChn][];
+            float[][][] max = new float[levels][numChn][];
+            float[][][] rms = new float[levels][numChn][];
+            int count = (int) bucketCount(frameCount);
+            buffer.clear().limit(0);
+            for (int level = 0; level < levels; level++, count = (count + 1) / 2) {
+                for (int c = 0; c < numChn; c++) {
+                    min[level][c] = readFloats(channel, buffer, count);
+                    max[level][c] = readFloats(channel, buffer, count);
+                    rms[level][c] = readFloats(channel, buffer, count);
+                }
+            }
+            return new PeakPyramid(numChn, smpRate, frameCount, min, max, rms);
+        }
+    }
+
+    /** Returns the number of levels {@link Builder#finish} makes for {@code frameCount} frames. */
+    private static int levelCount(long frameCount) {
+        int levels = 1;
+        for (long n = bucketCount(frameCount); n > 1; n = (n + 1) / 2) {
+            levels++;
+        }
+        return levels;
+    }
+
+    private static long bucketCount(long frameCount) {
+        return Math.max(1, (frameCount + BASE_BUCKET - 1) / BASE_BUCKET);
+    }
+
+    /** Returns the size of the sidecar {@link #write} makes, so a header can be checked before anything is allocated. */
+    private static long fileSize(int numChn, long frameCount) {
+        long floats = 0;
+        long count = bucketCount(frameCount);
+        for (int level = levelCount(frameCount); level > 0; level--, count = (count + 1) / 2) {
+            floats += count;
+        }
+        return HEADER_SIZE + 3L * 4 * numChn * floats;
+    }
+
+    private static float[] readFloats(FileChannel channel, ByteBuffer buffer, int count) throws IOException {
+        float[] values = new float[count];
+        int done = 0;
+        while (done < count) {
+            if (buffer.remaining() < 4) {
+                buffer.compact();
+                buffer.limit(buffer.capacity());
+                fill(channel, buffer);
+            }
+            FloatBuffer floats = buffer.asFloatBuffer();
+            int n = Math.min(floats.remaining(), count - done);
+            floats.get(values, done, n);
+            buffer.position(buffer.position() + n * 4);
+            done += n;
+        }
+        return values;
+    }
+
+    /** Reads until {@code buffer} is full or the file ends, then flips it. */
+    private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < 4) {
+            throw new IOException("Peak sidecar is truncated");
+        }
+    }
+}
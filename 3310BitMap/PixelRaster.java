@@ -0,0 +1,128 @@
+import java.awt.Color;
+
+/**
+ * A packed image buffer holding one {@code 0xAARRGGBB} {@code int} per pixel.
+ * <p>
+ * Rows are kept in the order they are stored in a BMP file, so row 0 is the
+ * bottom scanline of the picture. {@code stride} is the distance, in pixels,
+ * between the starts of two consecutive rows and is at least {@code width}.
+ */
+public class PixelRaster {
+
+    /** Opaque black, used for pixels a filter does not compute. */
+    public static final int OPAQUE_BLACK = 0xFF000000;
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int[] pixels;
+
+    public PixelRaster(int width, int height) {
+        this(width, height, width, new int[width * height]);
+    }
+
+    public PixelRaster(int width, int height, int stride, int[] pixels) {
+        if (width < 0 || height < 0 || stride < width) {
+            throw new IllegalArgumentException("Invalid raster geometry " + width + "x" + height + " stride " + stride);
+        }
+        if (height > 0 && pixels.length < (height - 1) * stride + width) {
+            throw new IllegalArgumentException("Pixel array too small for raster geometry");
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Returns the backing array. Pixel {@code (x, y)} lives at {@code y * stride + x}.
+     *
+     * @return the packed pixel array, not a copy.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getRGB(int x, int y) {
+        return pixels[y * stride + x];
+    }
+
+    public void setRGB(int x, int y, int argb) {
+        pixels[y * stride + x] = argb;
+    }
+
+    /**
+     * Creates an empty raster with the same dimensions as this one.
+     *
+     * @return a new raster whose pixels are all zero.
+     */
+    public PixelRaster createCompatible() {
+        return new PixelRaster(width, height);
+    }
+
+    public static int pack(int red, int green, int blue) {
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    public static int red(int argb) {
+        return (argb >> 16) & 0xFF;
+    }
+
+    public static int green(int argb) {
+        return (argb >> 8) & 0xFF;
+    }
+
+    public static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    /**
+     * Packs a legacy {@code Color[][]} image, indexed {@code [y][x]}, into a raster.
+     * {@code null} entries become {@link #OPAQUE_BLACK}.
+     *
+     * @param  colors  the image to convert; every row must have the same length.
+     * @return a new raster holding the same pixels.
+     */
+    public static PixelRaster fromColors(Color[][] colors) {
+        int height = colors.length;
+        int width = height == 0 ? 0 : colors[0].length;
+        PixelRaster raster = new PixelRaster(width, height);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                Color c = colors[y][x];
+                raster.pixels[row + x] = c == null ? OPAQUE_BLACK : c.getRGB();
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Expands this raster into a {@code Color[][]} for callers that still need one.
+     * This allocates a {@code Color} per pixel and should stay off hot paths.
+     *
+     * @return a new {@code [height][width]} array of colors.
+     */
+    public Color[][] toColors() {
+        Color[][] colors = new Color[height][width];
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            for (int x = 0; x < width; x++) {
+                colors[y][x] = new Color(pixels[row + x], true);
+            }
+        }
+        return colors;
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.Arrays;
+
+/**
+ * Converts the sample rate of a stream by a rational factor with a polyphase FIR filter.
+ * <p>
+ * A change from {@code inRate} to {@code outRate} is an upsampling by {@code L} followed by a
+ * downsampling by {@code M}, where {@code L / M} is the reduced ratio of the rates. The low-pass
+ * filter between the two is a Kaiser-windowed sinc cut off below the lower of the two Nyquist
+ * frequencies, designed once and stored as {@code L} phases of {@code taps} coefficients each;
+ * every output sample is one phase applied to the last {@code taps} input samples, so neither
+ * the zeros of the upsampling nor the samples dropped by the downsampling are ever computed.
+ * <p>
+ * Blocks of any size can be fed in: each channel keeps the input samples that the following
+ * outputs still need. The filter delay is compensated, so output frame {@code n} is the signal
+ * at input time {@code n * M / L}, and after {@link #flush} exactly
+ * {@code ceil(inputFrames * L / M)} frames have come out. Equal rates are passed through.
+ */
+public class Resampler {
+
+    /** Taps per phase when upsampling; downsampling by a factor {@code r} uses {@code r} times as many. */
+    private static final int BASE_TAPS = 64;
+
+    /** Kaiser window parameter, for about 80 dB of stopband attenuation. */
+    private static final double KAISER_BETA = 8.0;
+
+    private final int inRate;
+    private final int outRate;
+    private final int up;
+    private final int down;
+    private final int taps;
+
+    // Coefficient k of phase p at phases[p * taps + k], applied to the sample k frames back
+    private final float[] phases;
+
+    // Per channel: the input samples from absolute frame lineStart on
+    private final float[][] lines;
+    private long lineStart;
+    private int lineLength;
+
+    // The next output frame n, as whole = floor(n * down / up) and frac = n * down mod up
+    private long whole;
+    private int frac;
+    private long inputFrames;
+    private long outputFrames;
+
+    /**
+     * @param  numChn   the number of channels.
+     * @param  inRate   the input sample rate in Hz.
+     * @param  outRate  the output sample rate in Hz.
+     */
+    public Resampler(int numChn, int inRate, int outRate) {
+        if (numChn <= 0 || inRate <= 0 || outRate <= 0) {
+            throw new IllegalArgumentException("Cannot resample " + numChn + " channels from " + inRate + " to " + outRate + " Hz");
+        }
+        int gcd = gcd(inRate, outRate);
+        this.inRate = inRate;
+        this.outRate = outRate;
+        this.up = outRate / gcd;
+        this.down = inRate / gcd;
+        // Downsampling narrows the passband relative to the input, so the filter gets longer;
+        // the length is rounded up to a multiple of four for the inner loop
+        int length = (int) Math.ceil(BASE_TAPS * Math.max(1.0, (double) down / up));
+        this.taps = (length + 3) & ~3;
+        this.phases = up == down ? null : design(up, down, taps);
+        this.lines = new float[numChn][taps + WavSampleReader.FRAMES_PER_READ];
+        // The first outputs look back over the start of the stream, which reads as silence
+        this.lineStart = -taps / 2;
+        this.lineLength = taps / 2;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Designs the prototype low-pass at the upsampled rate and splits it into phases.
+     */
+    private static float[] design(int up, int down, int taps) {
+        int length = up * taps;
+        double center = length / 2.0;
+        // Transition band of a Kaiser window of this length and attenuation, in cycles per
+        // upsampled sample; the cutoff sits half of it below the lower Nyquist frequency
+        double attenuation = KAISER_BETA / 0.1102 + 8.7;
+        double transition = (attenuation - 8) / (2.285 * 2 * Math.PI * (length - 1));
+        double cutoff = 0.5 / Math.max(up, down) - transition / 2;
+        double[] h = new double[length];
+        double sum = 0;
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int j = 0; j < length; j++) {
+            double t = j - center;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double r = t / center;
+            double window = Math.abs(r) > 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - r * r)) / i0Beta;
+            h[j] = sinc * window;
+            sum += h[j];
+        }
+        // Unity gain at DC for the output, which averages one phase per sample
+        float[] phases = new float[length];
+        for (int p = 0; p < up; p++) {
+            for (int k = 0; k < taps; k++) {
+                phases[p * taps + k] = (float) (h[p + k * up] * up / sum);
+            }
+        }
+        return phases;
+    }
+
+    /** Zeroth-order modified Bessel function of the first kind, by its power series. */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; term > 1e-12 * sum; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    public int getInputRate() {
+        return inRate;
+    }
+
+    public int getOutputRate() {
+        return outRate;
+    }
+
+    /**
+     * Returns the number of frames the whole output has for {@code inputFrames} input frames.
+     *
+     * @param  inputFrames  the length of the input.
+     * @return {@code ceil(inputFrames * L / M)}.
+     */
+    public long outputLength(long inputFrames) {
+        return up == down ? inputFrames : (inputFrames * up + down - 1) / down;
+    }
+
+    /**
+     * Returns the largest number of frames one call can produce from {@code inputFrames} frames,
+     * for sizing the output arrays.
+     *
+     * @param  inputFrames  the number of frames passed to {@link #process}.
+     * @return an upper bound of the frames produced.
+     */
+    public int maxOutput(int inputFrames) {
+        return up == down ? inputFrames : (int) (((long) inputFrames + taps) * up / down + 1);
+    }
+
+    /**
+     * Feeds frames in and writes the output frames that they complete.
+     *
+     * @param  in        one array of samples per channel.
+     * @param  offset    the index in each input array of the first frame.
+     * @param  frames    the number of input frames.
+     * @param  out       one array per channel, with room for {@link #maxOutput(int)} frames.
+     * @param  outOffset the index in each output array of the first frame to write.
+     * @return the number of frames written.
+     */
+    public int process(float[][] in, int offset, int frames, float[][] out, int outOffset) {
+        if (up == down) {
+            for (int c = 0; c < lines.length; c++) {
+                System.arraycopy(in[c], offset, out[c], outOffset, frames);
+            }
+            inputFrames += frames;
+            outputFrames += frames;
+            return frames;
+        }
+        int written = 0;
+        int done = 0;
+        while (done < frames) {
+            int length = Math.min(frames - done, lines[0].length - lineLength);
+            for (int c = 0; c < lines.length; c++) {
+                System.arraycopy(in[c], offset + done, lines[c], lineLength, length);
+            }
+            lineLength += length;
+            done += length;
+            inputFrames += length;
+            written += drain(out, outOffset + written, Long.MAX_VALUE);
+        }
+        return written;
+    }
+
+    /**
+     * Writes the output frames still held back by the filter delay, reading silence past the
+     * end of the input. Call once after the last {@link #process}.
+     *
+     * @param  out        one array per channel, with room for {@link #maxOutput(int) maxOutput(0)} frames.
+     * @param  outOffset  the index in each output array of the first frame to write.
+     * @return the number of frames written.
+     */
+    public int flush(float[][] out, int outOffset) {
+        if (up == down) {
+            return 0;
+        }
+        long total = outputLength(inputFrames);
+        int written = 0;
+        while (outputFrames < total) {
+            int room = Math.min(lines[0].length - lineLength, taps);
+            for (float[] line : lines) {
+                Arrays.fill(line, lineLength, lineLength + room, 0f);
+            }
+            lineLength += room;
+            written += drain(out, outOffset + written, total);
+        }
+        return written;
+    }
+
+    /**
+     * Computes every output frame whose input is in the lines, up to output frame
+     * {@code limit}, then drops the input samples no later output needs.
+     */
+    private int drain(float[][] out, int outOffset, long limit) {
+        int half = taps / 2;
+        long lineEnd = lineStart + lineLength;
+        int written = 0;
+        // Output n needs input frames up to floor(n * M / L) + taps / 2
+        while (whole + half < lineEnd && outputFrames < limit) {
+            int newest = (int) (whole + half - lineStart);
+            int phase = frac * taps;
+            for (int c = 0; c < lines.length; c++) {
+                float[] line = lines[c];
+                // Four running sums, so the multiply-adds do not wait on each other
+                float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                for (int k = 0; k < taps; k += 4) {
+                    s0 += phases[phase + k] * line[newest - k];
+                    s1 += phases[phase + k + 1] * line[newest - k - 1];
+                    s2 += phases[phase + k + 2] * line[newest - k - 2];
+                    s3 += phases[phase + k + 3] * line[newest - k - 3];
+                }
+                out[c][outOffset + written] = (s0 + s1) + (s2 + s3);
+            }
+            written++;
+            outputFrames++;
+            frac += down;
+            whole += frac / up;
+            frac %= up;
+        }
+
+        // Keep the taps - 1 samples before the newest input of the next output
+        long keepFrom = Math.min(lineEnd, whole + half - taps + 1);
+        int drop = (int) Math.max(0, keepFrom - lineStart);
+        if (drop > 0) {
+            for (float[] line : lines) {
+                System.arraycopy(line, drop, line, 0, lineLength - drop);
+            }
+            lineStart += drop;
+            lineLength -= drop;
+        }
+        return written;
+    }
+}
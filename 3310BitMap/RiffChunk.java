@@ -0,0 +1,30 @@
+/**
+ * The location of one chunk in a RIFF file.
+ */
+public class RiffChunk {
+
+    /** The four-character chunk id, such as {@code "fmt "} or {@code "data"}, as a {@link BinaryReader#fourCC(String)} tag. */
+    public final int tag;
+
+    /** File offset of the first payload byte, just after the 8-byte chunk header. */
+    public final long offset;
+
+    /** Payload size in bytes, as stored in the chunk header, without the pad byte. */
+    public final long size;
+
+    RiffChunk(int tag, long offset, long size) {
+        this.tag = tag;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /** Returns the chunk id as a string, such as {@code "fmt "}. */
+    public String getId() {
+        return BinaryReader.fourCCToString(tag);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("'%s' at %d, %d bytes", getId(), offset, size);
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Walks the chunks of a RIFF file such as a WAV file.
+ * <p>
+ * Only the 8-byte chunk headers are read; the reader seeks past every payload, so chunks
+ * like {@code LIST}, {@code bext} or {@code JUNK} cost nothing however large they are.
+ * The caller owns the channel and closes it.
+ */
+public class RiffReader {
+
+    private static final int RIFF = BinaryReader.fourCC("RIFF");
+
+    private final FileChannel channel;
+    private final String formType;
+    private final long end;
+    private final ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private long next;
+
+    /**
+     * Reads the RIFF header at the start of the channel.
+     *
+     * @param  channel  the channel of the open file.
+     * @throws IOException if the file does not start with a RIFF header.
+     */
+    public RiffReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer riff = read(0, 12);
+        if (BinaryReader.fourCC(riff, 0) != RIFF) {
+            throw new IOException("Not a RIFF file");
+        }
+        this.formType = BinaryReader.fourCCToString(BinaryReader.fourCC(riff, 8));
+
+        // Streamed captures often leave the RIFF size at 0 or 0xFFFFFFFF, so trust the file length over it
+        long riffEnd = 8 + BinaryReader.u32LE(riff, 4);
+        long fileSize = channel.size();
+        this.end = riffEnd > 12 && riffEnd <= fileSize ? riffEnd : fileSize;
+        this.next = 12;
+    }
+
+    /**
+     * Returns the form type that follows the RIFF header, {@code "WAVE"} for a WAV file.
+     *
+     * @return the four-character form type.
+     */
+    public String getFormType() {
+        return formType;
+    }
+
+    /**
+     * Returns the next chunk and moves past it.
+     *
+     * @return the next chunk, or {@code null} when there are no more chunks.
+     * @throws IOException if the chunk header cannot be read.
+     */
+    public RiffChunk nextChunk() throws IOException {
+        if (next + 8 > end) {
+            return null;
+        }
+        header.clear();
+        readFully(header, next);
+        RiffChunk chunk = new RiffChunk(BinaryReader.fourCC(header, 0), next + 8, BinaryReader.u32LE(header, 4));
+        // Payloads are padded to an even length
+        next = chunk.offset + chunk.size + (chunk.size & 1);
+        return chunk;
+    }
+
+    /**
+     * Returns the next chunk with the given id, skipping any others.
+     *
+     * @param  id  the four-character chunk id.
+     * @return the chunk, or {@code null} if no further chunk has that id.
+     * @throws IOException if a chunk header cannot be read.
+     */
+    public RiffChunk findChunk(String id) throws IOException {
+        int tag = BinaryReader.fourCC(id);
+        RiffChunk chunk;
+        while ((chunk = nextChunk()) != null) {
+            if (chunk.tag == tag) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the whole payload of a small chunk such as {@code fmt }.
+     *
+     * @param  chunk  the chunk to read.
+     * @return a little-endian buffer holding the payload.
+     * @throws IOException if the payload cannot be read.
+     */
+    public ByteBuffer readPayload(RiffChunk chunk) throws IOException {
+        if (chunk.size > Integer.MAX_VALUE) {
+            throw new IOException("Chunk " + chunk + " is too large to read into memory");
+        }
+        // Check against the file before allocating, so a corrupt size fails as an IOException
+        if (chunk.offset + chunk.size > end) {
+            throw new IOException("Chunk " + chunk + " runs past the end of the file");
+        }
+        return read(chunk.offset, (int) chunk.size);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, position);
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at offset " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+    }
+
+}
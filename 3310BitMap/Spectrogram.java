@@ -0,0 +1,385 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A short-time Fourier transform of a recording, reduced to a fixed number of time columns
+ * for display.
+ * <p>
+ * The channels are mixed down to mono and cut into Hann-windowed frames that overlap by half.
+ * Frames are analysed in batches: the samples of one batch are kept in a small ring, and its
+ * frames are transformed in parallel on a {@link ForkJoinPool}, two real frames per complex
+ * {@link Fft}, each worker on its own reused {@code double[]} buffers. The power of every
+ * frame is averaged into the column that covers it, so memory depends on the number of
+ * columns and the FFT size, never on the length of the file, and an hour of audio is analysed
+ * in one streaming pass. Levels are in dB relative to a full-scale sine.
+ */
+public class Spectrogram {
+
+    /** FFT size used by the viewers: 2048 points, about 21 Hz per bin at 44.1 kHz. */
+    public static final int DEFAULT_FFT_SIZE = 2048;
+
+    /** Lowest level shown by {@link #render(int, int)}; quieter bins are black. */
+    public static final float DEFAULT_FLOOR_DB = -120;
+
+    /** Number of frames whose samples are buffered and transformed together. */
+    private static final int BATCH_FRAMES = 128;
+
+    /** Number of frames transformed by one task of a batch; even, so frames pair up. */
+    private static final int FRAMES_PER_TASK = 16;
+
+    private static final int[] PALETTE = palette(0x000000, 0x280B54, 0x8C1D6A, 0xE35932, 0xFCFFA4);
+
+    private final int fftSize;
+    private final int smpRate;
+    private final long frameCount;
+
+    // Indexed [column][bin], in dB
+    private final float[][] levels;
+
+    private Spectrogram(int fftSize, int smpRate, long frameCount, float[][] levels) {
+        this.fftSize = fftSize;
+        this.smpRate = smpRate;
+        this.frameCount = frameCount;
+        this.levels = levels;
+    }
+
+    /**
+     * Analyses a file from the current position of {@code reader} to the end of its data,
+     * on the common pool.
+     *
+     * @param  reader   an open sample reader, normally at frame 0.
+     * @param  fftSize  the frame length, a power of two.
+     * @param  columns  the number of time columns, typically the width of the image.
+     * @return the spectrogram.
+     * @throws IOException if the samples cannot be read.
+     */
+    public static Spectrogram analyze(WavSampleReader reader, int fftSize, int columns) throws IOException {
+        return analyze(reader, fftSize, columns, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Analyses a file from the current position of {@code reader} to the end of its data.
+     *
+     * @param  reader   an open sample reader, normally at frame 0.
+     * @param  fftSize  the frame length, a power of two.
+     * @param  columns  the number of time columns, typically the width of the image.
+     * @param  pool     the pool that transforms the frames.
+     * @return the spectrogram.
+     * @throws IOException if the samples cannot be read.
+     */
+    public static Spectrogram analyze(WavSampleReader reader, int fftSize, int columns, ForkJoinPool pool) throws IOException {
+        WavFormat format = reader.getFormat();
+        Analyzer analyzer = new Analyzer(fftSize, format.smpRate, reader.getFrameCount() - reader.getFramePosition(), columns, pool);
+        float[][] block = new float[format.numChn][WavSampleReader.FRAMES_PER_READ];
+        int frames;
+        while ((frames = reader.readFrames(block, 0, WavSampleReader.FRAMES_PER_READ)) > 0) {
+            analyzer.add(block, 0, frames);
+        }
+        return analyzer.finish();
+    }
+
+    /**
+     * Analyses samples already in memory, such as the output of an effect, on the common pool.
+     *
+     * @param  channels  one array of normalized samples per channel.
+     * @param  frames    the number of frames to analyse from the start of each array.
+     * @param  smpRate   the sample rate, which gives the bin frequencies.
+     * @param  fftSize   the frame length, a power of two.
+     * @param  columns   the number of time columns, typically the width of the image.
+     * @return the spectrogram.
+     */
+    public static Spectrogram of(float[][] channels, int frames, int smpRate, int fftSize, int columns) {
+        Analyzer analyzer = new Analyzer(fftSize, smpRate, frames, columns, ForkJoinPool.commonPool());
+        analyzer.add(channels, 0, frames);
+        return analyzer.finish();
+    }
+
+    /**
+     * Buffers the mono mixdown batch by batch and accumulates the frame powers per column.
+     */
+    private static final class Analyzer {
+        private final Fft fft;
+        private final int fftSize;
+        private final int hop;
+        private final int bins;
+        private final int smpRate;
+        private final long frameCount;
+        private final long stftFrames;
+        private final int columns;
+        private final ForkJoinPool pool;
+        private final double[] window;
+        private final double scale;
+
+        // Samples of the current batch: frame i of the batch starts at ring[i * hop]
+        private final float[] ring;
+        private int fill;
+        private long firstStftFrame;
+
+        // Power of each frame of the batch, then the sums per column
+        private final float[][] framePower;
+        private final double[][] columnPower;
+        private final int[] columnFrames;
+
+        // One pair of work buffers per task slot of a batch, reused for every batch
+        private final double[][] workRe;
+        private final double[][] workIm;
+
+        Analyzer(int fftSize, int smpRate, long frameCount, int columns, ForkJoinPool pool) {
+            if (columns <= 0) {
+                throw new IllegalArgumentException("Invalid column count " + columns);
+            }
+            if (fftSize < 2) {
+                throw new IllegalArgumentException("FFT size must be at least 2: " + fftSize);
+            }
+            this.fft = new Fft(fftSize);
+            this.fftSize = fftSize;
+            this.hop = fftSize / 2;
+            this.bins = fftSize / 2 + 1;
+            this.smpRate = smpRate;
+            this.frameCount = frameCount;
+            this.stftFrames = Math.max(1, (frameCount + hop - 1) / hop);
+            this.columns = columns;
+            this.pool = pool;
+
+            this.window = new double[fftSize];
+            double sum = 0;
+            for (int i = 0; i < fftSize; i++) {
+                window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / fftSize);
+                sum += window[i];
+            }
+            // A full-scale sine puts sum/2 into its bin, which should read 0 dB
+            this.scale = 4 / (sum * sum);
+
+            this.ring = new float[(BATCH_FRAMES - 1) * hop + fftSize];
+            this.framePower = new float[BATCH_FRAMES][bins];
+            this.columnPower = new double[columns][bins];
+            this.columnFrames = new int[columns];
+            int slots = BATCH_FRAMES / FRAMES_PER_TASK;
+            this.workRe = new double[slots][fftSize];
+            this.workIm = new double[slots][fftSize];
+        }
+
+        /** Adds the next {@code frames} sample frames, analysing every batch that fills up. */
+        void add(float[][] block, int offset, int frames) {
+            int numChn = block.length;
+            float gain = 1f / numChn;
+            int done = 0;
+            while (done < frames) {
+                int length = Math.min(frames - done, ring.length - fill);
+                for (int i = 0; i < length; i++) {
+                    float sum = 0;
+                    for (int c = 0; c < numChn; c++) {
+                        sum += block[c][offset + done + i];
+                    }
+                    ring[fill + i] = sum * gain;
+                }
+                fill += length;
+                done += length;
+                if (fill == ring.length) {
+                    analyzeBatch(BATCH_FRAMES);
+                }
+            }
+        }
+
+        /** Zero-pads and analyses the frames that start before the end of the data. */
+        Spectrogram finish() {
+            while (fill > 0) {
+                Arrays.fill(ring, fill, ring.length, 0f);
+                analyzeBatch(Math.min(BATCH_FRAMES, (fill + hop - 1) / hop));
+            }
+            if (frameCount == 0) {
+                analyzeBatch(1);
+            }
+
+            float[][] levels = new float[columns][bins];
+            for (int col = 0; col < columns; col++) {
+                if (columnFrames[col] == 0) {
+                    // Fewer frames than columns: repeat the column to the left
+                    if (col == 0) {
+                        Arrays.fill(levels[col], DEFAULT_FLOOR_DB);
+                    } else {
+                        levels[col] = levels[col - 1].clone();
+                    }
+                    continue;
+                }
+                double norm = scale / columnFrames[col];
+                for (int bin = 0; bin < bins; bin++) {
+                    levels[col][bin] = (float) (10 * Math.log10(columnPower[col][bin] * norm + 1e-30));
+                }
+            }
+            return new Spectrogram(fftSize, smpRate, frameCount, levels);
+        }
+
+        /**
+         * Transforms the first {@code count} frames of the ring in parallel, adds their power to
+         * the columns, and moves the samples still needed to the front of the ring.
+         */
+        private void analyzeBatch(int count) {
+            int tasks = (count + FRAMES_PER_TASK - 1) / FRAMES_PER_TASK;
+            RecursiveAction[] actions = new RecursiveAction[tasks];
+            for (int t = 0; t < tasks; t++) {
+                int slot = t;
+                actions[t] = new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        int first = slot * FRAMES_PER_TASK;
+                        transformFrames(first, Math.min(count, first + FRAMES_PER_TASK), workRe[slot], workIm[slot]);
+                    }
+                };
+            }
+            if (tasks == 1) {
+                actions[0].invoke();
+            } else {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(actions);
+                    }
+                });
+            }
+
+            for (int i = 0; i < count; i++) {
+                int col = (int) ((firstStftFrame + i) * columns / stftFrames);
+                double[] sums = columnPower[col];
+                float[] power = framePower[i];
+                for (int bin = 0; bin < bins; bin++) {
+                    sums[bin] += power[bin];
+                }
+                columnFrames[col]++;
+            }
+
+            int consumed = count * hop;
+            System.arraycopy(ring, consumed, ring, 0, ring.length - consumed);
+            fill = Math.max(0, fill - consumed);
+            firstStftFrame += count;
+        }
+
+        /**
+         * Computes the power spectra of batch frames {@code from} to {@code to}. Two real frames
+         * go through one complex transform, as the real and imaginary parts, and are separated
+         * again by the symmetry of real spectra.
+         */
+        private void transformFrames(int from, int to, double[] re, double[] im) {
+            for (int f = from; f < to; f += 2) {
+                boolean pair = f + 1 < to;
+                int a = f * hop;
+                int b = a + hop;
+                for (int i = 0; i < fftSize; i++) {
+                    re[i] = ring[a + i] * window[i];
+                    im[i] = pair ? ring[b + i] * window[i] : 0;
+                }
+                fft.forward(re, im);
+
+                float[] powerA = framePower[f];
+                float[] powerB = pair ? framePower[f + 1] : null;
+                for (int k = 0; k < bins; k++) {
+                    int n = (fftSize - k) & (fftSize - 1);
+                    double sumRe = re[k] + re[n];
+                    double difIm = im[k] - im[n];
+                    powerA[k] = (float) (0.25 * (sumRe * sumRe + difIm * difIm));
+                    if (pair) {
+                        double difRe = re[k] - re[n];
+                        double sumIm = im[k] + im[n];
+                        powerB[k] = (float) (0.25 * (difRe * difRe + sumIm * sumIm));
+                    }
+                }
+            }
+        }
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getSampleRate() {
+        return smpRate;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getColumnCount() {
+        return levels.length;
+    }
+
+    /** Returns the number of frequency bins, from 0 Hz to the Nyquist frequency inclusive. */
+    public int getBinCount() {
+        return fftSize / 2 + 1;
+    }
+
+    /** Returns the centre frequency of a bin in Hz. */
+    public double binFrequency(int bin) {
+        return (double) bin * smpRate / fftSize;
+    }
+
+    /** Returns the mean level of a bin over a column, in dB relative to a full-scale sine. */
+    public float level(int column, int bin) {
+        return levels[column][bin];
+    }
+
+    /**
+     * Draws the spectrogram with time on the x axis and frequency rising linearly on the y axis,
+     * from {@link #DEFAULT_FLOOR_DB} (black) to 0 dB (pale yellow).
+     *
+     * @param  width   the image width.
+     * @param  height  the image height.
+     * @return a new {@code TYPE_INT_RGB} image.
+     */
+    public BufferedImage render(int width, int height) {
+        return render(width, height, DEFAULT_FLOOR_DB);
+    }
+
+    /**
+     * Draws the spectrogram with time on the x axis and frequency rising linearly on the y axis.
+     *
+     * @param  width    the image width.
+     * @param  height   the image height.
+     * @param  floorDb  the level drawn black; the colours span from here to 0 dB.
+     * @return a new {@code TYPE_INT_RGB} image.
+     */
+    public BufferedImage render(int width, int height, float floorDb) {
+        if (width <= 0 || height <= 0 || floorDb >= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height + " or floor " + floorDb);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int bins = getBinCount();
+        int[] binOfRow = new int[height];
+        for (int y = 0; y < height; y++) {
+            binOfRow[y] = height == 1 ? 0 : (int) ((long) (height - 1 - y) * (bins - 1) / (height - 1));
+        }
+        float toIndex = (PALETTE.length - 1) / -floorDb;
+        for (int x = 0; x < width; x++) {
+            float[] column = levels[(int) ((long) x * levels.length / width)];
+            for (int y = 0; y < height; y++) {
+                float index = (column[binOfRow[y]] - floorDb) * toIndex;
+                out[y * width + x] = PALETTE[(int) Math.max(0, Math.min(PALETTE.length - 1, index))];
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Interpolates 256 colours through evenly spaced RGB stops.
+     */
+    private static int[] palette(int... stops) {
+        int[] colors = new int[256];
+        for (int i = 0; i < colors.length; i++) {
+            float position = (float) i * (stops.length - 1) / (colors.length - 1);
+            int stop = Math.min(stops.length - 2, (int) position);
+            float t = position - stop;
+            int from = stops[stop];
+            int to = stops[stop + 1];
+            colors[i] = PixelRaster.pack(
+                    Math.round((from >> 16 & 0xFF) * (1 - t) + (to >> 16 & 0xFF) * t),
+                    Math.round((from >> 8 & 0xFF) * (1 - t) + (to >> 8 & 0xFF) * t),
+                    Math.round((from & 0xFF) * (1 - t) + (to & 0xFF) * t));
+        }
+        return colors;
+    }
+}
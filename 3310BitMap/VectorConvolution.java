@@ -0,0 +1,154 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Applies 3x3 kernels with the incubating Vector API.
+ * <p>
+ * The rows a band needs are first split into planar red, green and blue {@code int} arrays.
+ * Each kernel tap is then one vector load and multiply-add per channel, covering as many
+ * pixels as the preferred species has lanes. Border and leftover pixels are computed one
+ * at a time. This class is only loaded by {@link Convolution} when the
+ * {@code jdk.incubator.vector} module is present, so compile and run with
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+class VectorConvolution implements Convolution.RowKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public boolean supports(ConvolutionKernel kernel) {
+        return kernel.getSize() == 3;
+    }
+
+    @Override
+    public void convolveRows(int[] src, int srcStride, int srcFirstRow, int width, int height,
+                             ConvolutionKernel kernel, EdgeMode edgeMode,
+                             int[] dst, int dstStride, int dstFirstRow, int y0, int y1) {
+        int[] weights = kernel.weights();
+        int divisor = kernel.getDivisor();
+
+        // The first and last image rows read outside the image and are done one pixel at a time
+        int first = Math.max(y0, 1);
+        int last = Math.max(first, Math.min(y1, height - 1));
+        if (width < 3) {
+            first = last = y1;
+        }
+        for (int y = y0; y < y1; y++) {
+            if (y < first || y >= last) {
+                int out = (y - dstFirstRow) * dstStride;
+                for (int x = 0; x < width; x++) {
+                    dst[out + x] = scalarPixel(src, srcStride, srcFirstRow, width, height, weights, divisor, edgeMode, x, y);
+                }
+            }
+        }
+        if (first >= last) {
+            return;
+        }
+
+        // Planar copies of source rows [first - 1, last + 1)
+        int rows = last - first + 2;
+        int[] red = new int[rows * width];
+        int[] green = new int[rows * width];
+        int[] blue = new int[rows * width];
+        for (int r = 0; r < rows; r++) {
+            split(src, (first - 1 + r - srcFirstRow) * srcStride, width, red, green, blue, r * width);
+        }
+
+        int shift = divisor > 0 && Integer.bitCount(divisor) == 1 ? Integer.numberOfTrailingZeros(divisor) : -1;
+        int bound = 1 + SPECIES.loopBound(width - 2);
+        for (int y = first; y < last; y++) {
+            int out = (y - dstFirstRow) * dstStride;
+            int above = (y - first) * width;
+
+            dst[out] = scalarPixel(src, srcStride, srcFirstRow, width, height, weights, divisor, edgeMode, 0, y);
+            int x = 1;
+            for (; x < bound; x += SPECIES.length()) {
+                IntVector r = finish(channel(red, above, x, width, weights), divisor, shift);
+                IntVector g = finish(channel(green, above, x, width, weights), divisor, shift);
+                IntVector b = finish(channel(blue, above, x, width, weights), divisor, shift);
+                r.lanewise(VectorOperators.LSHL, 16)
+                        .or(g.lanewise(VectorOperators.LSHL, 8))
+                        .or(b)
+                        .or(PixelRaster.OPAQUE_BLACK)
+                        .intoArray(dst, out + x);
+            }
+            for (; x < width; x++) {
+                dst[out + x] = scalarPixel(src, srcStride, srcFirstRow, width, height, weights, divisor, edgeMode, x, y);
+            }
+        }
+    }
+
+    /**
+     * Computes the weighted 3x3 sum of one channel for {@code SPECIES.length()} pixels starting at column {@code x}.
+     */
+    private static IntVector channel(int[] plane, int above, int x, int width, int[] weights) {
+        IntVector acc = IntVector.zero(SPECIES);
+        for (int ky = 0; ky < 3; ky++) {
+            int row = above + ky * width + x - 1;
+            for (int kx = 0; kx < 3; kx++) {
+                int weight = weights[ky * 3 + kx];
+                if (weight == 0) {
+                    continue;
+                }
+                IntVector v = IntVector.fromArray(SPECIES, plane, row + kx);
+                acc = weight == 1 ? acc.add(v) : acc.add(v.mul(weight));
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * Divides by the kernel divisor and clamps to 0-255. A power-of-two divisor becomes an
+     * arithmetic shift; it rounds negative sums differently, but those clamp to 0 either way.
+     */
+    private static IntVector finish(IntVector acc, int divisor, int shift) {
+        if (shift > 0) {
+            acc = acc.lanewise(VectorOperators.ASHR, shift);
+        } else if (divisor != 1) {
+            acc = acc.lanewise(VectorOperators.DIV, divisor);
+        }
+        return acc.max(0).min(255);
+    }
+
+    private static void split(int[] src, int offset, int width, int[] red, int[] green, int[] blue, int out) {
+        int x = 0;
+        for (int bound = SPECIES.loopBound(width); x < bound; x += SPECIES.length()) {
+            IntVector v = IntVector.fromArray(SPECIES, src, offset + x);
+            v.lanewise(VectorOperators.LSHR, 16).and(0xFF).intoArray(red, out + x);
+            v.lanewise(VectorOperators.LSHR, 8).and(0xFF).intoArray(green, out + x);
+            v.and(0xFF).intoArray(blue, out + x);
+        }
+        for (; x < width; x++) {
+            int pixel = src[offset + x];
+            red[out + x] = (pixel >> 16) & 0xFF;
+            green[out + x] = (pixel >> 8) & 0xFF;
+            blue[out + x] = pixel & 0xFF;
+        }
+    }
+
+    private static int scalarPixel(int[] src, int srcStride, int srcFirstRow, int width, int height,
+                                   int[] weights, int divisor, EdgeMode edgeMode, int x, int y) {
+        int redSum = 0, greenSum = 0, blueSum = 0;
+        for (int ky = 0; ky < 3; ky++) {
+            int sy = edgeMode.resolve(y + ky - 1, height);
+            if (sy < 0) {
+                return PixelRaster.OPAQUE_BLACK;
+            }
+            int base = (sy - srcFirstRow) * srcStride;
+            for (int kx = 0; kx < 3; kx++) {
+                int sx = edgeMode.resolve(x + kx - 1, width);
+                if (sx < 0) {
+                    return PixelRaster.OPAQUE_BLACK;
+                }
+                int pixel = src[base + sx];
+                int weight = weights[ky * 3 + kx];
+                redSum += weight * ((pixel >> 16) & 0xFF);
+                greenSum += weight * ((pixel >> 8) & 0xFF);
+                blueSum += weight * (pixel & 0xFF);
+            }
+        }
+        return PixelRaster.pack(Convolution.saturate(redSum / divisor),
+                Convolution.saturate(greenSum / divisor), Convolution.saturate(blueSum / divisor));
+    }
+}
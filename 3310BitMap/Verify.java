@@ -0,0 +1,609 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Checks the decoders and filters against straightforward reference computations, on
+ * generated inputs, so no sample files are needed.
+ * <p>
+ * Usage: {@code java Verify [check...]}, where each check is one of the names below; with no
+ * arguments every check runs. Every comparison prints one line, and the exit status is 1 if
+ * any of them failed.
+ * <ul>
+ *   <li>{@code bmp}: every pixel format {@link BmpDecoder} reads, against a per-pixel reference.</li>
+ *   <li>{@code fft}: {@link FftConvolution} against the spatial sums for 3x3 to 65x65 kernels in
+ *       every edge mode, and the FFT crossover through {@link Convolution#apply} and
+ *       {@link BmpStreamFilter}.</li>
+ *   <li>{@code loudness}: {@link LoudnessMeter} on the EBU Tech 3341 test signals at three
+ *       sample rates, and channel weights for masked layouts.</li>
+ *   <li>{@code resample}: {@link Resampler} against the exact sine at the output rate, its
+ *       output length and block size independence, and {@link ChannelMixer} fold-downs.</li>
+ * </ul>
+ */
+public class Verify {
+
+    /** A named group of comparisons. */
+    private interface Check {
+        void run(Verify verify) throws IOException;
+    }
+
+    private static final Map<String, Check> CHECKS = new LinkedHashMap<>();
+
+    static {
+        CHECKS.put("bmp", Verify::bmpFormats);
+        CHECKS.put("fft", Verify::fftConvolution);
+        CHECKS.put("loudness", Verify::loudness);
+        CHECKS.put("resample", Verify::resampling);
+    }
+
+    // Odd, so every bit depth has padded rows and RLE4 rows end on half a byte
+    private static final int BMP_WIDTH = 37;
+    private static final int BMP_HEIGHT = 23;
+
+    // Small enough for the reference sums of a 65x65 kernel, and not a multiple of any tile
+    private static final int FFT_WIDTH = 97;
+    private static final int FFT_HEIGHT = 61;
+
+    // Taller than the tiles of the kernels used through apply and streaming, which are 24 to 96 rows
+    private static final int CROSSOVER_SIZE = 150;
+    private static final int[] CROSSOVER_KERNELS = {9, 15, 33};
+
+    /** The tolerance of EBU Tech 3341 for integrated loudness, in LU. */
+    private static final double LOUDNESS_TOLERANCE = 0.1;
+
+    private static final int[][] RATE_PAIRS = {
+        {44100, 48000}, {48000, 44100}, {44100, 96000}, {96000, 44100}, {48000, 96000}, {96000, 48000}};
+    private static final int RESAMPLE_FRAMES = 100000;
+
+    // Frames left out of the error at each end, where the filter reaches past the input
+    private static final int RESAMPLE_EDGE = 2000;
+
+    private static final double RESAMPLE_ERROR_DB = -90;
+    private static final double ALIAS_DB = -84;
+
+    private int failures;
+
+    public static void main(String[] args) {
+        List<String> names = args.length > 0 ? Arrays.asList(args) : new ArrayList<>(CHECKS.keySet());
+        Verify verify = new Verify();
+        for (String name : names) {
+            Check check = CHECKS.get(name);
+            if (check == null) {
+                System.err.println("Unknown check " + name + "; expected one of " + CHECKS.keySet());
+                System.exit(2);
+            }
+            try {
+                check.run(verify);
+            } catch (IOException | RuntimeException ex) {
+                ex.printStackTrace();
+                verify.failures++;
+            }
+        }
+        System.out.printf("%d failure(s)%n", verify.failures);
+        if (verify.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void expect(boolean ok, String description) {
+        System.out.printf("%s %s%n", ok ? "ok  " : "FAIL", description);
+        if (!ok) {
+            failures++;
+        }
+    }
+
+    /**
+     * Decodes one file of every bit depth, compression and header variant and compares each
+     * pixel with the colour the generator encoded.
+     */
+    private void bmpFormats() throws IOException {
+        Random random = new Random(20);
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = PixelRaster.pack(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        }
+        IntUnaryOperator indexed = v -> palette[v];
+        int[] rgb555 = {0x7C00, 0x03E0, 0x001F, 0};
+        int[] rgb565 = {0xF800, 0x07E0, 0x001F, 0};
+        int[] bgra = {0xFF0000, 0xFF00, 0xFF, 0xFF000000};
+        int[] rgb1010102 = {0x3FF00000, 0x000FFC00, 0x000003FF, 0xC0000000};
+
+        checkUncompressed("1-bit", 40, 1, BmpHeader.BI_RGB, false, Arrays.copyOf(palette, 2), null, 1, indexed, random);
+        checkUncompressed("4-bit", 40, 4, BmpHeader.BI_RGB, false, Arrays.copyOf(palette, 16), null, 4, indexed, random);
+        checkUncompressed("8-bit", 40, 8, BmpHeader.BI_RGB, false, palette, null, 8, indexed, random);
+        checkUncompressed("8-bit top-down", 40, 8, BmpHeader.BI_RGB, true, palette, null, 8, indexed, random);
+        checkUncompressed("8-bit OS/2 core header", 12, 8, BmpHeader.BI_RGB, false, palette, null, 8, indexed, random);
+        checkUncompressed("16-bit 5-5-5", 40, 16, BmpHeader.BI_RGB, false, null, null, 16,
+                v -> maskedColor(v, rgb555), random);
+        checkUncompressed("16-bit 5-6-5 bitfields", 40, 16, BmpHeader.BI_BITFIELDS, false, null, rgb565, 16,
+                v -> maskedColor(v, rgb565), random);
+        checkUncompressed("24-bit", 40, 24, BmpHeader.BI_RGB, false, null, null, 24, v -> v | 0xFF000000, random);
+        checkUncompressed("24-bit top-down", 40, 24, BmpHeader.BI_RGB, true, null, null, 24, v -> v | 0xFF000000, random);
+        checkUncompressed("32-bit with unused alpha", 40, 32, BmpHeader.BI_RGB, false, null, null, 24,
+                v -> v | 0xFF000000, random);
+        checkUncompressed("32-bit with alpha", 40, 32, BmpHeader.BI_RGB, false, null, null, 32, v -> v, random);
+        checkUncompressed("32-bit V5 BGRA bitfields", 124, 32, BmpHeader.BI_BITFIELDS, false, null, bgra, 32,
+                v -> v, random);
+        checkUncompressed("32-bit 10-10-10-2 alpha bitfields", 40, 32, BmpHeader.BI_ALPHABITFIELDS, false, null,
+                rgb1010102, 32, v -> maskedColor(v, rgb1010102), random);
+        checkRle("RLE8", 8, palette, random);
+        checkRle("RLE4", 4, Arrays.copyOf(palette, 16), random);
+    }
+
+    /**
+     * Encodes random pixel values at {@code bitsPerPx}, decodes the file and compares the
+     * pixels with {@code reference} applied to each value.
+     *
+     * @param  valueBits  the number of random low bits in each stored value; paletted images
+     *                    store random indices into {@code palette} instead.
+     */
+    private void checkUncompressed(String name, int dibSize, int bitsPerPx, int compression, boolean topDown,
+                                   int[] palette, int[] masks, int valueBits, IntUnaryOperator reference,
+                                   Random random) throws IOException {
+        int rowSize = BmpDecoder.rowSize(BMP_WIDTH, bitsPerPx);
+        ByteBuffer pixels = ByteBuffer.allocate(rowSize * BMP_HEIGHT).order(ByteOrder.LITTLE_ENDIAN);
+        int[] expected = new int[BMP_WIDTH * BMP_HEIGHT];
+        for (int row = 0; row < BMP_HEIGHT; row++) {
+            int base = row * rowSize;
+            // The raster is bottom-up, so the first stored row of a top-down file is its last row
+            int y = topDown ? BMP_HEIGHT - 1 - row : row;
+            for (int x = 0; x < BMP_WIDTH; x++) {
+                int value = palette != null ? random.nextInt(palette.length)
+                        : random.nextInt() & (int) ((1L << valueBits) - 1);
+                if (bitsPerPx < 8) {
+                    int bit = x * bitsPerPx;
+                    int index = base + bit / 8;
+                    pixels.put(index, (byte) (pixels.get(index) | value << (8 - bitsPerPx - bit % 8)));
+                } else if (bitsPerPx == 8) {
+                    pixels.put(base + x, (byte) value);
+                } else if (bitsPerPx == 16) {
+                    pixels.putShort(base + 2 * x, (short) value);
+                } else if (bitsPerPx == 24) {
+                    pixels.put(base + 3 * x, (byte) value).put(base + 3 * x + 1, (byte) (value >> 8))
+                            .put(base + 3 * x + 2, (byte) (value >> 16));
+                } else {
+                    pixels.putInt(base + 4 * x, value);
+                }
+                expected[y * BMP_WIDTH + x] = reference.applyAsInt(value);
+            }
+        }
+        expectBmp(name, dibSize, bitsPerPx, compression, topDown, palette, masks, pixels.array(), expected);
+    }
+
+    /**
+     * Encodes random rows of encoded runs, absolute runs and deltas, decodes the file and
+     * compares the pixels with the runs painted one by one.
+     */
+    private void checkRle(String name, int bitsPerPx, int[] palette, Random random) throws IOException {
+        boolean rle4 = bitsPerPx == 4;
+        ByteBuffer data = ByteBuffer.allocate(4 * BMP_WIDTH * BMP_HEIGHT);
+        int[] expected = new int[BMP_WIDTH * BMP_HEIGHT];
+        Arrays.fill(expected, PixelRaster.OPAQUE_BLACK);
+        for (int y = 0; y < BMP_HEIGHT; y++) {
+            int x = 0;
+            while (x < BMP_WIDTH) {
+                int left = BMP_WIDTH - x;
+                int op = random.nextInt(8);
+                if (op == 0) {
+                    // Delta: skipped pixels stay black
+                    int skip = Math.min(1 + random.nextInt(4), left);
+                    data.put((byte) 0).put((byte) 2).put((byte) skip).put((byte) 0);
+                    x += skip;
+                } else if (op < 4 && left >= 3) {
+                    int count = Math.min(3 + random.nextInt(9), left);
+                    data.put((byte) 0).put((byte) count);
+                    int start = data.position();
+                    int bytes = rle4 ? (count + 1) / 2 : count;
+                    for (int i = 0; i < count; i++) {
+                        int index = random.nextInt(palette.length);
+                        if (rle4) {
+                            data.put(start + i / 2, (byte) (data.get(start + i / 2) | index << ((i & 1) == 0 ? 4 : 0)));
+                        } else {
+                            data.put(start + i, (byte) index);
+                        }
+                        expected[y * BMP_WIDTH + x + i] = palette[index];
+                    }
+                    data.position(start + bytes + (bytes & 1));
+                    x += count;
+                } else {
+                    int count = Math.min(1 + random.nextInt(12), left);
+                    int first = random.nextInt(palette.length);
+                    int second = rle4 ? random.nextInt(palette.length) : first;
+                    data.put((byte) count).put((byte) (rle4 ? first << 4 | second : first));
+                    for (int i = 0; i < count; i++) {
+                        expected[y * BMP_WIDTH + x + i] = palette[(i & 1) == 0 ? first : second];
+                    }
+                    x += count;
+                }
+            }
+            data.put((byte) 0).put((byte) (y == BMP_HEIGHT - 1 ? 1 : 0));
+        }
+        expectBmp(name, 40, bitsPerPx, rle4 ? BmpHeader.BI_RLE4 : BmpHeader.BI_RLE8, false, palette, null,
+                Arrays.copyOf(data.array(), data.position()), expected);
+    }
+
+    /**
+     * Returns the colour the decoders give a bitfields pixel: channels of up to 8 bits scaled
+     * to 0..255, wider ones truncated to their top 8 bits, and opaque without an alpha mask.
+     */
+    private static int maskedColor(int pixel, int[] masks) {
+        int argb = masks[3] == 0 ? 0xFF000000 : maskedChannel(pixel, masks[3]) << 24;
+        return argb | maskedChannel(pixel, masks[0]) << 16 | maskedChannel(pixel, masks[1]) << 8
+                | maskedChannel(pixel, masks[2]);
+    }
+
+    private static int maskedChannel(int pixel, int mask) {
+        int shift = Integer.numberOfTrailingZeros(mask);
+        int bits = Integer.bitCount(mask);
+        int value = (pixel & mask) >>> shift;
+        int max = (1 << bits) - 1;
+        return bits <= 8 ? (value * 255 + max / 2) / max : value >>> (bits - 8);
+    }
+
+    /**
+     * Writes a BMP file around {@code pixels}, decodes it and compares every pixel.
+     */
+    private void expectBmp(String name, int dibSize, int bitsPerPx, int compression, boolean topDown,
+                           int[] palette, int[] masks, byte[] pixels, int[] expected) throws IOException {
+        boolean core = dibSize == BmpHeader.CORE_HEADER_SIZE;
+        int entrySize = core ? 3 : 4;
+        int maskBytes = masks != null && dibSize == BmpHeader.INFO_HEADER_SIZE
+                ? (compression == BmpHeader.BI_ALPHABITFIELDS ? 16 : 12) : 0;
+        int colors = palette == null ? 0 : palette.length;
+        int firstPxAddr = BmpHeader.FILE_HEADER_SIZE + dibSize + maskBytes + colors * entrySize;
+
+        ByteBuffer file = ByteBuffer.allocate(firstPxAddr + pixels.length).order(ByteOrder.LITTLE_ENDIAN);
+        file.put((byte) 'B').put((byte) 'M').putInt(file.capacity()).putInt(0).putInt(firstPxAddr);
+        file.putInt(dibSize);
+        if (core) {
+            file.putShort((short) BMP_WIDTH).putShort((short) BMP_HEIGHT).putShort((short) 1).putShort((short) bitsPerPx);
+        } else {
+            file.putInt(BMP_WIDTH).putInt(topDown ? -BMP_HEIGHT : BMP_HEIGHT).putShort((short) 1)
+                    .putShort((short) bitsPerPx).putInt(compression).putInt(pixels.length)
+                    .putInt(2835).putInt(2835).putInt(colors).putInt(0);
+            if (masks != null) {
+                // Inside a V2+ header, or as the DWORDs following a BITMAPINFOHEADER
+                for (int i = 0; i < (maskBytes > 0 ? maskBytes / 4 : 4); i++) {
+                    file.putInt(masks[i]);
+                }
+            }
+            file.position(BmpHeader.FILE_HEADER_SIZE + dibSize + maskBytes);
+        }
+        for (int i = 0; i < colors; i++) {
+            int color = palette[i];
+            file.put((byte) color).put((byte) (color >> 8)).put((byte) (color >> 16));
+            if (!core) {
+                file.put((byte) 0);
+            }
+        }
+        file.put(pixels);
+
+        Path path = Files.createTempFile("verify", ".bmp");
+        try {
+            Files.write(path, file.array());
+            expectPixels(name, readBmp(path), expected);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Compares the FFT with the spatial sums for every odd kernel size from 3 to 65, over the
+     * whole image and over a band that starts and ends inside a tile, then checks that
+     * {@link Convolution#apply} and {@link BmpStreamFilter}, which choose between the two
+     * paths, give the same pixels.
+     */
+    private void fftConvolution() throws IOException {
+        Random random = new Random(23);
+        PixelRaster image = randomImage(FFT_WIDTH, FFT_HEIGHT, random);
+        FftConvolution fft = new FftConvolution(1);
+        EdgeMode[] modes = {EdgeMode.SKIP, EdgeMode.CLAMP, EdgeMode.WRAP};
+        for (int size = 3; size <= 65; size += 2) {
+            ConvolutionKernel kernel = randomKernel(size, random);
+            String difference = null;
+            for (EdgeMode mode : modes) {
+                int[] expected = referenceConvolution(image, kernel, mode).getPixels();
+                int[] whole = new int[FFT_WIDTH * FFT_HEIGHT];
+                fft.convolveRows(image.getPixels(), image.getStride(), 0, FFT_WIDTH, FFT_HEIGHT, kernel, mode,
+                        whole, FFT_WIDTH, 0, 0, FFT_HEIGHT);
+                int y0 = 7;
+                int y1 = FFT_HEIGHT - 5;
+                int[] band = new int[(y1 - y0) * FFT_WIDTH];
+                fft.convolveRows(image.getPixels(), image.getStride(), 0, FFT_WIDTH, FFT_HEIGHT, kernel, mode,
+                        band, FFT_WIDTH, y0, y0, y1);
+                if (!Arrays.equals(whole, expected)) {
+                    difference = mode + " image";
+                } else if (!Arrays.equals(band, 0, band.length, expected, y0 * FFT_WIDTH, y1 * FFT_WIDTH)) {
+                    difference = mode + " band";
+                }
+                if (difference != null) {
+                    break;
+                }
+            }
+            expect(difference == null, String.format("FFT %dx%d equals the spatial sums%s", size, size,
+                    difference == null ? "" : ": differs for " + difference));
+        }
+
+        PixelRaster tall = randomImage(CROSSOVER_SIZE, CROSSOVER_SIZE, random);
+        Path input = Files.createTempFile("verify", ".bmp");
+        Path output = Files.createTempFile("verify", ".bmp");
+        try {
+            BmpWriter.write(tall, input, 24);
+            for (int size : CROSSOVER_KERNELS) {
+                ConvolutionKernel kernel = randomKernel(size, random);
+                for (EdgeMode mode : modes) {
+                    int[] expected = referenceConvolution(tall, kernel, mode).getPixels();
+                    String name = size + "x" + size + " " + mode;
+                    expectPixels("apply " + name, Convolution.apply(tall, kernel, mode), expected);
+                    if (mode != EdgeMode.WRAP) {
+                        BmpStreamFilter.filter(input, output, new FilterChain().then(kernel, mode));
+                        expectPixels("stream " + name, readBmp(output), expected);
+                    }
+                }
+            }
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    /**
+     * Meters the 1 kHz sine sequences of EBU Tech 3341 cases 1 to 6, which all have a known
+     * integrated loudness, at 44.1, 48 and 96 kHz. Layouts with a channel mask check that the
+     * surrounds and the LFE are found by speaker position: quad has no surround pair, so four
+     * equal tones read 6 dB above one.
+     */
+    private void loudness() {
+        double silence = Double.NEGATIVE_INFINITY;
+        int fiveZero = WavFormat.SPEAKER_FRONT_LEFT | WavFormat.SPEAKER_FRONT_RIGHT | WavFormat.SPEAKER_FRONT_CENTER
+                | WavFormat.SPEAKER_BACK_LEFT | WavFormat.SPEAKER_BACK_RIGHT;
+        int quad = WavFormat.SPEAKER_FRONT_LEFT | WavFormat.SPEAKER_FRONT_RIGHT
+                | WavFormat.SPEAKER_BACK_LEFT | WavFormat.SPEAKER_BACK_RIGHT;
+        for (int smpRate : new int[] {44100, 48000, 96000}) {
+            expectLoudness("Tech 3341 case 1", smpRate, 0, -23, new double[] {20, -23, -23});
+            expectLoudness("Tech 3341 case 2", smpRate, 0, -33, new double[] {20, -33, -33});
+            expectLoudness("Tech 3341 case 3", smpRate, 0, -23,
+                    new double[] {10, -36, -36}, new double[] {60, -23, -23}, new double[] {10, -36, -36});
+            expectLoudness("Tech 3341 case 4", smpRate, 0, -23,
+                    new double[] {10, -72, -72}, new double[] {10, -36, -36}, new double[] {60, -23, -23},
+                    new double[] {10, -36, -36}, new double[] {10, -72, -72});
+            expectLoudness("Tech 3341 case 5", smpRate, 0, -23,
+                    new double[] {20, -26, -26}, new double[] {20.1, -20, -20}, new double[] {20, -26, -26});
+            expectLoudness("Tech 3341 case 6", smpRate, fiveZero, -23, new double[] {20, -28, -28, -24, -30, -30});
+        }
+        expectLoudness("Tech 3341 case 6 as 5.1 without a mask, loud LFE", 48000, 0, -23,
+                new double[] {20, -28, -28, -24, -10, -30, -30});
+        expectLoudness("Tech 3341 case 6 as 5.1 without a mask, silent LFE", 48000, 0, -23,
+                new double[] {20, -28, -28, -24, silence, -30, -30});
+        expectLoudness("quad, four -23 dBFS tones", 48000, quad, -20, new double[] {20, -23, -23, -23, -23});
+    }
+
+    /**
+     * Meters a sequence of 1 kHz sines and compares the integrated loudness.
+     *
+     * @param  segments  each {seconds, dBFS of channel 0, dBFS of channel 1, ...}.
+     */
+    private void expectLoudness(String name, int smpRate, int channelMask, double expected, double[]... segments) {
+        int numChn = segments[0].length - 1;
+        LoudnessMeter meter = new LoudnessMeter(numChn, smpRate, channelMask, LoudnessMeter.DEFAULT_WINDOW_SECONDS);
+        float[][] block = new float[numChn][WavSampleReader.FRAMES_PER_READ];
+        long frame = 0;
+        for (double[] segment : segments) {
+            long end = frame + Math.round(segment[0] * smpRate);
+            while (frame < end) {
+                int count = (int) Math.min(block[0].length, end - frame);
+                for (int c = 0; c < numChn; c++) {
+                    double amplitude = Math.pow(10, segment[c + 1] / 20);
+                    for (int i = 0; i < count; i++) {
+                        block[c][i] = (float) (amplitude * Math.sin(2 * Math.PI * 1000 * (frame + i) / smpRate));
+                    }
+                }
+                meter.add(block, 0, count);
+                frame += count;
+            }
+        }
+        double measured = meter.finish().integratedLoudness;
+        expect(Math.abs(measured - expected) <= LOUDNESS_TOLERANCE,
+                String.format("%s at %d Hz: %.2f LUFS, expected %.1f", name, smpRate, measured, expected));
+    }
+
+    /**
+     * Resamples a 1 kHz sine between 44.1, 48 and 96 kHz in both directions, and compares it
+     * with the sine computed at the output rate. A tone above the output Nyquist frequency must
+     * be filtered out, and the mixer must fold each speaker of a layout into the right side.
+     */
+    private void resampling() {
+        for (int[] pair : RATE_PAIRS) {
+            int inRate = pair[0];
+            int outRate = pair[1];
+            String name = inRate + " to " + outRate + " Hz";
+            float[] input = sine(1000, 0.5, inRate, RESAMPLE_FRAMES);
+            float[] output = resample(input, inRate, outRate, WavSampleReader.FRAMES_PER_READ);
+            long length = ((long) RESAMPLE_FRAMES * outRate + inRate - 1) / inRate;
+            expect(output.length == length, String.format("%s: %d output frames, expected %d", name, output.length, length));
+            expect(Arrays.equals(output, resample(input, inRate, outRate, 777)),
+                    name + ": output is the same for 777-frame blocks");
+
+            float[] exact = sine(1000, 0.5, outRate, output.length);
+            double error = 0;
+            for (int i = RESAMPLE_EDGE; i < output.length - RESAMPLE_EDGE; i++) {
+                error = Math.max(error, Math.abs(output[i] - exact[i]));
+            }
+            double errorDb = 20 * Math.log10(error / 0.5);
+            expect(errorDb < RESAMPLE_ERROR_DB, String.format("%s: error %.1f dB", name, errorDb));
+
+            if (outRate < inRate) {
+                double frequency = 0.55 * outRate;
+                float[] alias = resample(sine(frequency, 1, inRate, RESAMPLE_FRAMES), inRate, outRate,
+                        WavSampleReader.FRAMES_PER_READ);
+                double peak = 0;
+                for (int i = RESAMPLE_EDGE; i < alias.length - RESAMPLE_EDGE; i++) {
+                    peak = Math.max(peak, Math.abs(alias[i]));
+                }
+                double peakDb = 20 * Math.log10(peak);
+                expect(peakDb < ALIAS_DB,
+                        String.format("%s: %.0f Hz tone comes through at %.1f dB", name, frequency, peakDb));
+            }
+        }
+
+        float g = (float) Math.sqrt(0.5);
+        expectFold("5.1 without a mask", 6, 0,
+                new float[][] {{1, 0}, {0, 1}, {g, g}, {0, 0}, {g, 0}, {0, g}});
+        expectFold("quad", 4, WavFormat.SPEAKER_FRONT_LEFT | WavFormat.SPEAKER_FRONT_RIGHT
+                | WavFormat.SPEAKER_BACK_LEFT | WavFormat.SPEAKER_BACK_RIGHT,
+                new float[][] {{1, 0}, {0, 1}, {g, 0}, {0, g}});
+        expectFold("5.1 with side surrounds", 6, WavFormat.SPEAKER_FRONT_LEFT | WavFormat.SPEAKER_FRONT_RIGHT
+                | WavFormat.SPEAKER_FRONT_CENTER | WavFormat.SPEAKER_LOW_FREQUENCY
+                | WavFormat.SPEAKER_SIDE_LEFT | WavFormat.SPEAKER_SIDE_RIGHT,
+                new float[][] {{1, 0}, {0, 1}, {g, g}, {0, 0}, {g, 0}, {0, g}});
+        expectFold("7.1", 8, WavFormat.SPEAKER_FRONT_LEFT | WavFormat.SPEAKER_FRONT_RIGHT
+                | WavFormat.SPEAKER_FRONT_CENTER | WavFormat.SPEAKER_LOW_FREQUENCY
+                | WavFormat.SPEAKER_BACK_LEFT | WavFormat.SPEAKER_BACK_RIGHT
+                | WavFormat.SPEAKER_SIDE_LEFT | WavFormat.SPEAKER_SIDE_RIGHT,
+                new float[][] {{1, 0}, {0, 1}, {g, g}, {0, 0}, {g, 0}, {0, g}, {g, 0}, {0, g}});
+    }
+
+    private static float[] sine(double frequency, double amplitude, int smpRate, int frames) {
+        float[] samples = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / smpRate));
+        }
+        return samples;
+    }
+
+    /** Feeds {@code input} through a resampler in blocks of {@code block} frames and flushes it. */
+    private static float[] resample(float[] input, int inRate, int outRate, int block) {
+        Resampler resampler = new Resampler(1, inRate, outRate);
+        float[][] out = new float[1][resampler.maxOutput(block)];
+        // Room for more frames than expected, so an overlong output shows up as a wrong length
+        float[] output = new float[(int) resampler.outputLength(input.length) + out[0].length];
+        int length = 0;
+        for (int i = 0; i < input.length; i += block) {
+            int frames = Math.min(block, input.length - i);
+            int written = resampler.process(new float[][] {Arrays.copyOfRange(input, i, i + frames)}, 0, frames, out, 0);
+            System.arraycopy(out[0], 0, output, length, written);
+            length += written;
+        }
+        int written = resampler.flush(out, 0);
+        System.arraycopy(out[0], 0, output, length, written);
+        return Arrays.copyOf(output, length + written);
+    }
+
+    /**
+     * Mixes a unit sample on each input channel in turn down to stereo.
+     *
+     * @param  expected  the {left, right} gains of each input channel.
+     */
+    private void expectFold(String name, int inChannels, int channelMask, float[][] expected) {
+        ChannelMixer mixer = ChannelMixer.forLayout(inChannels, channelMask, 2);
+        float[][] out = new float[2][1];
+        for (int c = 0; c < inChannels; c++) {
+            float[][] in = new float[inChannels][1];
+            in[c][0] = 1;
+            mixer.mix(in, 0, 1, out, 0);
+            if (Math.abs(out[0][0] - expected[c][0]) > 1e-6 || Math.abs(out[1][0] - expected[c][1]) > 1e-6) {
+                expect(false, String.format("%s fold-down: channel %d goes to %.3f left, %.3f right, expected %.3f, %.3f",
+                        name, c, out[0][0], out[1][0], expected[c][0], expected[c][1]));
+                return;
+            }
+        }
+        expect(true, name + " fold-down");
+    }
+
+    private static PixelRaster randomImage(int width, int height, Random random) {
+        PixelRaster image = new PixelRaster(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, PixelRaster.pack(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            }
+        }
+        return image;
+    }
+
+    /** Returns a kernel of random weights, some negative, normalized by their sum. */
+    private static ConvolutionKernel randomKernel(int size, Random random) {
+        int[] weights = new int[size * size];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = random.nextInt(9) - 2;
+            sum += weights[i];
+        }
+        return new ConvolutionKernel(size, weights, Math.max(1, sum));
+    }
+
+    /**
+     * Applies a kernel tap by tap: the integer sums of every channel divided by the divisor
+     * and saturated, and black wherever {@link EdgeMode#SKIP} leaves a tap outside the image.
+     */
+    private static PixelRaster referenceConvolution(PixelRaster image, ConvolutionKernel kernel, EdgeMode edgeMode) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int size = kernel.getSize();
+        int radius = kernel.getRadius();
+        PixelRaster result = new PixelRaster(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                boolean skipped = false;
+                for (int ky = 0; ky < size && !skipped; ky++) {
+                    for (int kx = 0; kx < size; kx++) {
+                        int sx = edgeMode.resolve(x + kx - radius, width);
+                        int sy = edgeMode.resolve(y + ky - radius, height);
+                        if (sx < 0 || sy < 0) {
+                            skipped = true;
+                            break;
+                        }
+                        int pixel = image.getRGB(sx, sy);
+                        int weight = kernel.getWeight(kx, ky);
+                        red += weight * PixelRaster.red(pixel);
+                        green += weight * PixelRaster.green(pixel);
+                        blue += weight * PixelRaster.blue(pixel);
+                    }
+                }
+                int divisor = kernel.getDivisor();
+                result.setRGB(x, y, skipped ? PixelRaster.OPAQUE_BLACK : PixelRaster.pack(
+                        Convolution.saturate(red / divisor), Convolution.saturate(green / divisor),
+                        Convolution.saturate(blue / divisor)));
+            }
+        }
+        return result;
+    }
+
+    private static PixelRaster readBmp(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return BmpDecoder.decode(channel, BmpHeader.read(channel));
+        }
+    }
+
+    private void expectPixels(String name, PixelRaster raster, int[] expected) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        if (width * height != expected.length) {
+            expect(false, name + ": raster is " + width + "x" + height);
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (raster.getRGB(x, y) != expected[y * width + x]) {
+                    expect(false, String.format("%s: pixel (%d, %d) is %08X, expected %08X", name, x, y,
+                            raster.getRGB(x, y), expected[y * width + x]));
+                    return;
+                }
+            }
+        }
+        expect(true, name);
+    }
+}
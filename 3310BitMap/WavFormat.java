@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The contents of a WAV {@code fmt } chunk.
+ */
+public class WavFormat {
+
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_IEEE_FLOAT = 3;
+    public static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    // Speaker positions of the WAVE_FORMAT_EXTENSIBLE channel mask; channels are stored in the
+    // order of their bits, lowest first
+    public static final int SPEAKER_FRONT_LEFT = 0x1;
+    public static final int SPEAKER_FRONT_RIGHT = 0x2;
+    public static final int SPEAKER_FRONT_CENTER = 0x4;
+    public static final int SPEAKER_LOW_FREQUENCY = 0x8;
+    public static final int SPEAKER_BACK_LEFT = 0x10;
+    public static final int SPEAKER_BACK_RIGHT = 0x20;
+    public static final int SPEAKER_FRONT_LEFT_OF_CENTER = 0x40;
+    public static final int SPEAKER_FRONT_RIGHT_OF_CENTER = 0x80;
+    public static final int SPEAKER_BACK_CENTER = 0x100;
+    public static final int SPEAKER_SIDE_LEFT = 0x200;
+    public static final int SPEAKER_SIDE_RIGHT = 0x400;
+    public static final int SPEAKER_TOP_CENTER = 0x800;
+    public static final int SPEAKER_TOP_FRONT_LEFT = 0x1000;
+    public static final int SPEAKER_TOP_FRONT_CENTER = 0x2000;
+    public static final int SPEAKER_TOP_FRONT_RIGHT = 0x4000;
+    public static final int SPEAKER_TOP_BACK_LEFT = 0x8000;
+    public static final int SPEAKER_TOP_BACK_CENTER = 0x10000;
+    public static final int SPEAKER_TOP_BACK_RIGHT = 0x20000;
+
+    /** The format code stored in the chunk, possibly {@link #FORMAT_EXTENSIBLE}. */
+    public final int format;
+
+    /** The effective sample format: the sub-format of an extensible file, otherwise {@link #format}. */
+    public final int sampleFormat;
+
+    public final int numChn;
+    public final int smpRate;
+    public final int byteRate;
+    public final int blockAlign;
+    public final int smpBits;
+
+    /**
+     * The speaker positions of an extensible file, one {@code SPEAKER_} bit per channel; 0 if
+     * the file does not say, in which case the standard WAV channel order is assumed.
+     */
+    public final int channelMask;
+
+    WavFormat(int format, int sampleFormat, int numChn, int smpRate, int byteRate, int blockAlign, int smpBits,
+              int channelMask) {
+        this.format = format;
+        this.sampleFormat = sampleFormat;
+        this.numChn = numChn;
+        this.smpRate = smpRate;
+        this.byteRate = byteRate;
+        this.blockAlign = blockAlign;
+        this.smpBits = smpBits;
+        this.channelMask = channelMask;
+    }
+
+    /**
+     * Describes plain integer PCM samples.
+     *
+     * @param  numChn   the number of channels.
+     * @param  smpRate  the number of frames per second.
+     * @param  smpBits  8, 16, 24 or 32.
+     * @return the format.
+     */
+    public static WavFormat pcm(int numChn, int smpRate, int smpBits) {
+        return of(FORMAT_PCM, numChn, smpRate, smpBits);
+    }
+
+    /**
+     * Describes 32-bit IEEE float samples.
+     *
+     * @param  numChn   the number of channels.
+     * @param  smpRate  the number of frames per second.
+     * @return the format.
+     */
+    public static WavFormat ieeeFloat(int numChn, int smpRate) {
+        return of(FORMAT_IEEE_FLOAT, numChn, smpRate, 32);
+    }
+
+    private static WavFormat of(int format, int numChn, int smpRate, int smpBits) {
+        if (numChn <= 0 || smpRate <= 0) {
+            throw new IllegalArgumentException("Invalid format: " + numChn + " channels at " + smpRate + " Hz");
+        }
+        int blockAlign = numChn * ((smpBits + 7) / 8);
+        return new WavFormat(format, format, numChn, smpRate, smpRate * blockAlign, blockAlign, smpBits, 0);
+    }
+
+    /**
+     * Parses the payload of a {@code fmt } chunk.
+     *
+     * @param  fmt  a little-endian buffer holding the payload.
+     * @return the format.
+     * @throws IOException if the chunk is too short or describes no samples.
+     */
+    public static WavFormat parse(ByteBuffer fmt) throws IOException {
+        if (fmt.limit() < 16) {
+            throw new IOException("fmt chunk is only " + fmt.limit() + " bytes");
+        }
+        BinaryReader reader = new BinaryReader(fmt, ByteOrder.LITTLE_ENDIAN).position(0);
+        int format = reader.u16();
+        int numChn = reader.u16();
+        int smpRate = reader.i32();
+        int byteRate = reader.i32();
+        int blockAlign = reader.u16();
+        int smpBits = reader.u16();
+
+        // WAVE_FORMAT_EXTENSIBLE follows the basic fields with cbSize and wValidBitsPerSample,
+        // then the channel mask, then a sub-format GUID whose first two bytes are the real format code
+        int sampleFormat = format;
+        int channelMask = 0;
+        if (format == FORMAT_EXTENSIBLE && fmt.limit() >= 24) {
+            channelMask = reader.position(20).i32();
+        }
+        if (format == FORMAT_EXTENSIBLE && fmt.limit() >= 26) {
+            sampleFormat = reader.position(24).u16();
+        }
+
+        if (numChn == 0 || blockAlign == 0 || smpBits == 0) {
+            throw new IOException("fmt chunk describes no samples");
+        }
+        return new WavFormat(format, sampleFormat, numChn, smpRate, byteRate, blockAlign, smpBits, channelMask);
+    }
+
+    /**
+     * Returns the number of bytes each sample of one channel occupies in a frame.
+     *
+     * @return {@code blockAlign / numChn}.
+     */
+    public int bytesPerSample() {
+        return blockAlign / numChn;
+    }
+
+    /**
+     * Returns the speaker position of one channel from {@link #channelMask}.
+     *
+     * @param  channel  the channel index, from 0.
+     * @return the channel's {@code SPEAKER_} bit, or 0 if the mask has none for it.
+     */
+    public int speaker(int channel) {
+        return speaker(channelMask, channel);
+    }
+
+    /**
+     * Returns the speaker position of one channel of a layout: the {@code channel}-th lowest
+     * set bit of {@code channelMask}.
+     *
+     * @param  channelMask  the {@code SPEAKER_} bits of the layout.
+     * @param  channel      the channel index, from 0.
+     * @return the channel's {@code SPEAKER_} bit, or 0 if the mask has fewer bits.
+     */
+    static int speaker(int channelMask, int channel) {
+        int bits = channelMask;
+        for (int c = 0; c < channel && bits != 0; c++) {
+            bits &= bits - 1;
+        }
+        return Integer.lowestOneBit(bits);
+    }
+}
@@ -3,6 +3,7 @@ import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.font.TextAttribute;
 import java.awt.im.InputMethodHighlight;
+import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ImageObserver;
 import java.awt.image.ImageProducer;
@@ -20,108 +21,28 @@ public class WavParser {
     //static final String filePath = "C:\\Users\\Admin\\Desktop\\Highway To Hell.wav";
     static final String filePath = "C:\\Users\\Administrator\\Desktop\\WAV\\guitar.wav";
 
-    private static String bytesToString(byte[] bytes, int offset, int length)
-    {
-        try {
-            String result = "";
-            for (int i = 0; i < length; i++) {
-                result += (char)bytes[offset + i];
-            }
-            return result;
-        } catch (ArrayIndexOutOfBoundsException oobEx) {
-            return null;
-        }
-    }
-
-    protected static int bytesToInt(byte[] bytes, int offset, int length, boolean littleEndian) {
-        return (littleEndian ? bytesToIntLE(bytes, offset, length) : bytesToIntBE(bytes, offset, length));
-    }
-
-    /**
-     * Converts a little-endian sequence of bytes to an {@code int}.
-     *
-     * @param  bytes   the byte sequence that is to be converted.
-     * @param  offset  the offset to {@code bytes} at which the sequence starts.
-     * @param  length  the length of the byte sequence.
-     * @return the {@code int} that results from the conversion of the byte sequence.
-     * @since  1.0
-     * @see    #bytesToIntBE(byte[], int, int)
-     */
-
-    private static int bytesToIntLE(byte[] bytes, int offset, int length) {
-        int i = offset + length;
-        int value = bytes[--i];
-        while (--i >= offset) {
-            value <<= 8;
-            value |= bytes[i] & 0xFF;
-        }
-        return value;
-    }
-
-    /**
-     * Converts a big-endian sequence of bytes to an {@code int}.
-     *
-     * @param  bytes   the byte sequence that is to be converted.
-     * @param  offset  the offset to {@code bytes} at which the sequence starts.
-     * @param  length  the length of the byte sequence.
-     * @return the {@code int} that results from the conversion of the byte sequence.
-     * @since  1.0
-     * @see    #bytesToIntLE(byte[], int, int)
-     */
-
-    private static int bytesToIntBE(byte[] bytes, int offset, int length) {
-        int endOffset = offset + length;
-        int value = bytes[offset];
-        while (++offset < endOffset) {
-            value <<= 8;
-            value |= bytes[offset] & 0xFF;
-        }
-        return value;
-    }
-
     public static void main(String[] args)
     {
-        try {
-            File wavFile = new File(filePath);
-            RandomAccessFile raf = new RandomAccessFile(wavFile, "r");
-
-            byte[] wavHeader = new byte[44];
-            raf.read(wavHeader);
-            int index = 0;
-
-            String riff = bytesToString(wavHeader, index, 4);
-            System.out.println(riff);
-            index += 4;
+        File wavFile = new File(args.length > 0 ? args[0] : filePath);
+        try (WavSampleReader reader = WavSampleReader.open(wavFile.toPath())) {
+            WavFormat wavFormat = reader.getFormat();
 
-            int fileSize = bytesToInt(wavHeader, index, 4, true);
-            System.out.printf("Total file size: %d%n", fileSize+44);
-            index += 4;
+            System.out.println("RIFF WAVE");
+            System.out.printf("Total file size: %d%n", wavFile.length());
 
-            String WAVEfmt = bytesToString(wavHeader, index, 8);
-            System.out.println(WAVEfmt);
-            index += 8;
-
-            int fmtLen = bytesToIntLE(wavHeader, index, 4);
-            System.out.printf("Length of format data: %d%n", fmtLen);
-            index += 4;
-
-            int format = bytesToIntLE(wavHeader, index, 2);
+            int format = wavFormat.format;
             System.out.printf("Format type code: %d%n", format);
-            index += 2;
 
-            int numChn = bytesToIntLE(wavHeader, index, 2);
+            int numChn = wavFormat.numChn;
             System.out.printf("Number of channels: %d%n", numChn);
-            index += 2;
 
-            int smpRate = bytesToIntLE(wavHeader, index, 4);
+            int smpRate = wavFormat.smpRate;
             System.out.printf("Sample rate: %dHz%n", smpRate);
-            index += 4;
 
-            int bitRate = bytesToIntLE(wavHeader, index, 4);
+            int bitRate = wavFormat.byteRate;
             System.out.printf("Total byte rate: %dBps%n", bitRate);
-            index += 4;
 
-            int modeCode = bytesToIntLE(wavHeader, index, 2);
+            int modeCode = wavFormat.blockAlign;
             String mode = "";
             switch (modeCode)
             {
@@ -139,305 +60,92 @@ public class WavParser {
                     break;
             }
             System.out.printf("Playback mode: %s%n", mode);
-            index += 2;
 
-            int smpBits = bytesToIntLE(wavHeader, index, 2);
+            int smpBits = wavFormat.smpBits;
             System.out.printf("Bits per sample: %d%n", smpBits);
-            index += 2;
-            int smpBytes = smpBits/8;
 
-            String dataChunk = bytesToString(wavHeader, index, 4);
-            index += 4;
-
-            int dataSize = bytesToIntLE(wavHeader, index, 4);
+            long dataSize = reader.getDataSize();
             System.out.printf("Data size: %d%n", dataSize);
-            index += 4;
-
-            byte[] wavData = new byte[dataSize];
-            raf.read(wavData);
-
-            // The maxValue for a 2-byte signed short is 32767, which corresponds
-            //   to the maximum allowed amplitude of our waveform of +/-96dB
-            // We generate these max and min values so that we can normalize the
-            //   large-ish int values we're getting from each sample to a scaled
-            //   vertical offset from a point on the screen, or to an absolute
-            //   amplitude value in dB
-            double maxValue = Math.pow(2, smpBits)-1;
-            double minValue = -1*(maxValue+1);
-            System.out.println(maxValue);
-            System.out.println(minValue);
-
-            JFrame frame = new JFrame("WAVE");
-            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
-            frame.setUndecorated(true);
-
-            Toolkit tk = Toolkit.getDefaultToolkit();
-            int screenWidth = tk.getScreenSize().width;
-            int screenHeight = tk.getScreenSize().height;
-
-            frame.setVisible(true);
-            frame.requestFocus();
-
-            Canvas cnv = new Canvas();
-            cnv.setSize(screenWidth, screenHeight);
-            frame.add(cnv);
 
             double seconds = (double)dataSize / (double)bitRate;
             System.out.printf("There are %.2f seconds of audio data%n", seconds);
-            int numSamples = dataSize / 4;
-            short[] firstChannel = new short[numSamples];
-            short[] secondChannel = new short[numSamples];
-            short[] firstChannelfadeIN = new short[numSamples];
-            short[] secondChannelfadeIN = new short[numSamples];
+            long numSamples = reader.getFrameCount();
             System.out.printf("There are %d total samples%n", numSamples);
-            double spacing = (double)screenWidth / (double)(numSamples);
-            double xOffset = 0.0;
-            double centerLine = screenHeight / 2;
-            double topCenterLine = screenHeight / 4;
-            double botCenterLine = centerLine + topCenterLine;
-
-            double lastX = 0.0;
-            double lastY = centerLine;
-            int smpCount = 0;
-            
-            double dbThreshold = -5.0;
-            double thresholdAmplitude = 32767 * Math.pow(10, dbThreshold / 20);
-            
-            for(int idx = 0; idx < dataSize; idx += smpBytes*numChn)
-            {
-                int chn1offset = bytesToIntLE(wavData, idx, smpBytes);
-                firstChannel[smpCount] = (short)chn1offset;
-                firstChannelfadeIN[smpCount] = (short)chn1offset;
-                int chn2offset = bytesToIntLE(wavData, idx+smpBytes, smpBytes);
-                secondChannel[smpCount] = (short)chn2offset;
-                secondChannelfadeIN[smpCount] = (short)chn2offset;
 
-                if(smpCount % 10 == 0) {
-                    Graphics g = cnv.getGraphics();
-                    g.setColor(new Color(0x60, 0x60, 0x80));
+            // Metered in its own streaming pass, then the reader goes back to the first frame
+            System.out.printf("Loudness: %s%n", LoudnessMeter.measure(reader).summary());
+            reader.rewind();
 
-                    if (chn1offset > 0) {
-                        double yOffset = topCenterLine * (chn1offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (topCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = topCenterLine - yOffset;
-                    }
-                    if (chn1offset < 0) {
-                        double yOffset = topCenterLine * (chn1offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (topCenterLine + yOffset), 1, 1);
-                        lastY = topCenterLine + yOffset;
-                    }
-                    if (chn2offset > 0) {
-                        double yOffset = topCenterLine * (chn2offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (botCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = botCenterLine - yOffset;
-                    }
-                    if (chn2offset < 0) {
-                        double yOffset = topCenterLine * (chn2offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (botCenterLine + yOffset), 1, 1);
-                        lastY = botCenterLine + yOffset;
-                    }
-                }
-                //lastX = xOffset;
-                xOffset += spacing;
-                smpCount++;
+            //FADE OUT, FADE IN, CLAMP
+            double dbThreshold = -5.0;
+            EffectsEngine[] effects = {
+                new EffectsEngine().add(AudioEffect.fadeOut(0, numSamples)),
+                new EffectsEngine().add(AudioEffect.fadeIn(0, numSamples)),
+                new EffectsEngine().add(AudioEffect.hardClip(dbThreshold))
+            };
+
+            // The file is decoded one block at a time; each effect works in place on its own copy
+            // of the block, whose output goes straight into the pyramid of its waveform layer
+            PeakPyramid.Builder[] layers = new PeakPyramid.Builder[effects.length];
+            float[][][] scratch = new float[effects.length][numChn][WavSampleReader.FRAMES_PER_READ];
+            for (int e = 0; e < effects.length; e++) {
+                layers[e] = new PeakPyramid.Builder(numChn, smpRate, numSamples);
             }
-            
-            //FADE OUT
-            double fadeAmt = 1.0;
-            double fadeStep = 1.0 / numSamples;
-            //System.out.println(fadeStep);
-            for(int i = 0; i < dataSize/(smpBytes*numChn); i++) {
-                if (firstChannel[i] > 0) {
-                    firstChannel[i] = (short) ((firstChannel[i] / maxValue) * fadeAmt * maxValue);
-                } else {
-                    firstChannel[i] = (short) ((firstChannel[i] / minValue) * fadeAmt * minValue);
-                }
-                if (secondChannel[i] > 0) {
-                    secondChannel[i] = (short) ((secondChannel[i] / maxValue) * fadeAmt * maxValue);
-                } else {
-                    secondChannel[i] = (short) ((secondChannel[i] / minValue) * fadeAmt * minValue);
+            float[][] block = new float[numChn][WavSampleReader.FRAMES_PER_READ];
+            long position = 0;
+            int frames;
+            while ((frames = reader.readFrames(block, 0, WavSampleReader.FRAMES_PER_READ)) > 0) {
+                for (int e = 0; e < effects.length; e++) {
+                    for (int ch = 0; ch < numChn; ch++) {
+                        System.arraycopy(block[ch], 0, scratch[e][ch], 0, frames);
+                    }
+                    effects[e].process(scratch[e], 0, frames, position);
+                    layers[e].add(scratch[e], frames);
                 }
-                fadeAmt -= fadeStep;
-                //System.out.println(fadeAmt);
+                position += frames;
             }
 
-            smpCount = 0;
-            xOffset = 0.0;
-            for(int idx = 0; idx < dataSize / (smpBytes*numChn); idx++)
-            {
-                int chn1offset = firstChannel[idx];
-                int chn2offset = secondChannel[idx];
-
-                if(smpCount % 10 == 0) {
-                    Graphics g = cnv.getGraphics();
-                    g.setColor(new Color(0xff, 0x00, 0x00));
-
-                    if (chn1offset > 0) {
-                        double yOffset = topCenterLine * (chn1offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (topCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = topCenterLine - yOffset;
-                    }
-                    if (chn1offset < 0) {
-                        double yOffset = topCenterLine * (chn1offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (topCenterLine + yOffset), 1, 1);
-                        lastY = topCenterLine + yOffset;
-                    }
-                    if (chn2offset > 0) {
-                        double yOffset = topCenterLine * (chn2offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (botCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = botCenterLine - yOffset;
-                    }
-                    if (chn2offset < 0) {
-                        double yOffset = topCenterLine * (chn2offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (botCenterLine + yOffset), 1, 1);
-                        lastY = botCenterLine + yOffset;
-                    }
-                }
-                //lastX = xOffset;
-                xOffset += spacing;
-                smpCount++;
+            // Every pass is one layer of the waveform, drawn over the passes before it; the
+            // images are rendered here, off the event dispatch thread, and shown with one blit
+            // each, the waveform above the spectrogram
+            boolean headless = GraphicsEnvironment.isHeadless();
+            Dimension size = headless ? new Dimension(1920, 1080) : Toolkit.getDefaultToolkit().getScreenSize();
+            int viewHeight = size.height / 2;
+            // The original comes from the peak sidecar, which is only rebuilt when the file changes
+            BufferedImage waveform = new WaveformRenderer(size.width, viewHeight)
+                    .addLayer(PeakPyramid.loadOrBuild(wavFile.toPath()), new Color(0x60, 0x60, 0x80))
+                    .addLayer(layers[0].finish(), new Color(0xff, 0x00, 0x00))
+                    .addLayer(layers[1].finish(), new Color(0x00, 0xff, 0x00))
+                    .addLayer(layers[2].finish(), new Color(0xff, 0xff, 0x00))
+                    .render();
+
+            //SPECTROGRAM
+            reader.rewind();
+            BufferedImage spectrogram = Spectrogram.analyze(reader, Spectrogram.DEFAULT_FFT_SIZE, size.width)
+                    .render(size.width, viewHeight);
+
+            if (args.length > 1) {
+                WaveformRenderer.export(waveform, new File(args[1]).toPath());
+                System.out.printf("Waveform saved to %s%n", args[1]);
             }
-            
-            //FADE IN
-            double fadeInAmt = 0.0;
-            double fadeInStep = 1.0 / numSamples;
-            //System.out.println(fadeStep);
-            for(int i = 0; i < dataSize/(smpBytes*numChn); i++) {
-                if (firstChannelfadeIN[i] > 0) {
-                	firstChannelfadeIN[i] = (short) ((firstChannelfadeIN[i] / maxValue) * fadeAmt * maxValue);
-                } else {
-                	firstChannelfadeIN[i] = (short) ((firstChannelfadeIN[i] / minValue) * fadeAmt * minValue);
-                }
-                if (secondChannelfadeIN[i] > 0) {
-                	secondChannelfadeIN[i] = (short) ((secondChannelfadeIN[i] / maxValue) * fadeAmt * maxValue);
-                } else {
-                	secondChannelfadeIN[i] = (short) ((secondChannelfadeIN[i] / minValue) * fadeAmt * minValue);
-                }
-                fadeAmt += fadeStep;
-                //System.out.println(fadeAmt);
+            if (args.length > 2) {
+                WaveformRenderer.export(spectrogram, new File(args[2]).toPath());
+                System.out.printf("Spectrogram saved to %s%n", args[2]);
             }
-
-            smpCount = 0;
-            xOffset = 0.0;
-            for(int idx = 0; idx < dataSize / (smpBytes*numChn); idx++)
-            {
-                int chn1offset = firstChannelfadeIN[idx];
-                int chn2offset = secondChannelfadeIN[idx];
-
-                if(smpCount % 10 == 0) {
-                    Graphics g = cnv.getGraphics();
-                    g.setColor(new Color(0x00, 0xff, 0x00));
-
-                    if (chn1offset > 0) {
-                        double yOffset = topCenterLine * (chn1offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (topCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = topCenterLine - yOffset;
-                    }
-                    if (chn1offset < 0) {
-                        double yOffset = topCenterLine * (chn1offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (topCenterLine + yOffset), 1, 1);
-                        lastY = topCenterLine + yOffset;
-                    }
-                    if (chn2offset > 0) {
-                        double yOffset = topCenterLine * (chn2offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (botCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = botCenterLine - yOffset;
-                    }
-                    if (chn2offset < 0) {
-                        double yOffset = topCenterLine * (chn2offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (botCenterLine + yOffset), 1, 1);
-                        lastY = botCenterLine + yOffset;
-                    }
-                }
-                //lastX = xOffset;
-                xOffset += spacing;
-                smpCount++;
-            }
-            
-            //CLAMP
-            smpCount = 0;
-            xOffset = 0.0;
-            for(int idx = 0; idx < dataSize; idx += smpBytes*numChn) {
-                int chn1offset = bytesToIntLE(wavData, idx, smpBytes);
-                // Clipping the first channel
-                if (Math.abs(chn1offset) > thresholdAmplitude) {
-                    chn1offset = (int)(Math.signum(chn1offset) * thresholdAmplitude);
-                }
-                firstChannel[smpCount] = (short)chn1offset;
-
-                int chn2offset = bytesToIntLE(wavData, idx+smpBytes, smpBytes);
-                // Clipping the second channel
-                if (Math.abs(chn2offset) > thresholdAmplitude) {
-                    chn2offset = (int)(Math.signum(chn2offset) * thresholdAmplitude);
-                }
-                secondChannel[smpCount] = (short)chn2offset;
-                secondChannelfadeIN[smpCount] = (short)chn2offset;
-
-                if(smpCount % 10 == 0) {
-                    Graphics g = cnv.getGraphics();
-                    g.setColor(new Color(0xff, 0xff, 0x00));
-
-                    if (chn1offset > 0) {
-                        double yOffset = topCenterLine * (chn1offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (topCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = topCenterLine - yOffset;
-                    }
-                    if (chn1offset < 0) {
-                        double yOffset = topCenterLine * (chn1offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (topCenterLine + yOffset), 1, 1);
-                        lastY = topCenterLine + yOffset;
-                    }
-                    if (chn2offset > 0) {
-                        double yOffset = topCenterLine * (chn2offset / maxValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine-yOffset));
-                        g.fillRect((int) xOffset, (int) (botCenterLine - yOffset), 1, 1);
-                        //System.out.printf("Offset is +%.4fdB%n", (offset/maxValue)*96);
-                        lastY = botCenterLine - yOffset;
-                    }
-                    if (chn2offset < 0) {
-                        double yOffset = topCenterLine * (chn2offset / minValue);
-                        //g.drawLine((int)lastX, (int)lastY, (int)xOffset, (int)(centerLine+yOffset));
-                        //System.out.printf("Offset is -%.4fdB%n", (offset/minValue)*96);
-                        g.fillRect((int) xOffset, (int) (botCenterLine + yOffset), 1, 1);
-                        lastY = botCenterLine + yOffset;
-                    }
-                }
-                //lastX = xOffset;
-                xOffset += spacing;
-                smpCount++;
+            if (!headless) {
+                SwingUtilities.invokeLater(() -> {
+                    JFrame frame = new JFrame("WAVE");
+                    frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                    frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
+                    frame.setUndecorated(true);
+                    frame.setLayout(new GridLayout(2, 1));
+                    frame.add(new ImageCanvas(waveform));
+                    frame.add(new ImageCanvas(spectrogram));
+                    frame.setVisible(true);
+                    frame.requestFocus();
+                });
             }
 
-        } catch (FileNotFoundException fnfEx) {
-            fnfEx.printStackTrace();
         } catch (IOException ioEx) {
             ioEx.printStackTrace();
         }
@@ -0,0 +1,182 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the samples of a WAV file in fixed-size blocks of frames.
+ * <p>
+ * The chunks are walked with a {@link RiffReader} to find {@code fmt } and {@code data}
+ * wherever they are. Samples are then read through one reused direct buffer, so memory use
+ * is the same for a one-second clip and an hour-long capture.
+ */
+public class WavSampleReader implements Closeable {
+
+    private static final int FMT = BinaryReader.fourCC("fmt ");
+    private static final int DATA = BinaryReader.fourCC("data");
+
+    /** Number of frames fetched from the file per read. */
+    public static final int FRAMES_PER_READ = 8192;
+
+    private final FileChannel channel;
+    private final WavFormat format;
+    private final PcmDecoder decoder;
+    private final long dataOffset;
+    private final long dataSize;
+    private final long frameCount;
+    private final ByteBuffer buffer;
+    private long nextFrame;
+
+    private WavSampleReader(FileChannel channel, WavFormat format, long dataOffset, long dataSize) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        this.decoder = PcmDecoder.forFormat(format);
+        this.dataOffset = dataOffset;
+        this.dataSize = dataSize;
+        this.frameCount = dataSize / format.blockAlign;
+        this.buffer = ByteBuffer.allocateDirect(FRAMES_PER_READ * format.blockAlign).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Opens a WAV file and locates its format and sample data.
+     *
+     * @param  path  the WAV file.
+     * @return a reader positioned at the first frame.
+     * @throws IOException if the file is not a WAV file or has no {@code fmt } or {@code data} chunk.
+     */
+    public static WavSampleReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            RiffReader riff = new RiffReader(channel);
+            if (!"WAVE".equals(riff.getFormType())) {
+                throw new IOException("Not a WAVE file: " + riff.getFormType());
+            }
+            WavFormat format = null;
+            RiffChunk chunk;
+            while ((chunk = riff.nextChunk()) != null) {
+                if (chunk.tag == FMT) {
+                    format = WavFormat.parse(riff.readPayload(chunk));
+                } else if (chunk.tag == DATA) {
+                    if (format == null) {
+                        throw new IOException("data chunk precedes the fmt chunk");
+                    }
+                    // A capture that was cut short declares more data than the file holds
+                    long size = Math.min(chunk.size, channel.size() - chunk.offset);
+                    return new WavSampleReader(channel, format, chunk.offset, size);
+                }
+            }
+            throw new IOException(format == null ? "No fmt chunk" : "No data chunk");
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public WavFormat getFormat() {
+        return format;
+    }
+
+    /** Returns the file offset of the first sample byte. */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /** Returns the size of the sample data in bytes. */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    /** Returns the number of complete frames in the file. */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Moves to the given frame; the next read starts there.
+     *
+     * @param  frame  the frame index, from 0 to {@link #getFrameCount()}.
+     */
+    public void seekFrame(long frame) {
+        if (frame < 0 || frame > frameCount) {
+            throw new IllegalArgumentException("Frame " + frame + " outside 0.." + frameCount);
+        }
+        nextFrame = frame;
+    }
+
+    /** Returns the index of the frame the next read starts at. */
+    public long getFramePosition() {
+        return nextFrame;
+    }
+
+    public void rewind() {
+        seekFrame(0);
+    }
+
+    public PcmDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Reads up to {@code maxFrames} frames and decodes them into one array per channel.
+     * Integer samples keep their stored scale, so 16-bit samples range over -32768..32767.
+     *
+     * @param  channels   one destination array per channel.
+     * @param  offset     the index in each array of the first decoded frame.
+     * @param  maxFrames  the largest number of frames to read.
+     * @return the number of frames read, 0 at the end of the data.
+     * @throws IOException if the samples cannot be read.
+     */
+    public int readFrames(int[][] channels, int offset, int maxFrames) throws IOException {
+        int frames = fill(maxFrames);
+        decoder.decode(buffer, frames, channels, offset);
+        return frames;
+    }
+
+    /**
+     * Reads up to {@code maxFrames} frames and decodes them into normalized samples, one array per channel.
+     *
+     * @param  channels   one destination array per channel.
+     * @param  offset     the index in each array of the first decoded frame.
+     * @param  maxFrames  the largest number of frames to read.
+     * @return the number of frames read, 0 at the end of the data.
+     * @throws IOException if the samples cannot be read.
+     */
+    public int readFrames(float[][] channels, int offset, int maxFrames) throws IOException {
+        int frames = fill(maxFrames);
+        decoder.decode(buffer, frames, channels, offset);
+        return frames;
+    }
+
+    /**
+     * Reads the raw bytes of up to {@code maxFrames} frames into the shared buffer.
+     *
+     * @return the number of complete frames now at the start of the buffer.
+     */
+    int fill(int maxFrames) throws IOException {
+        int frames = (int) Math.min(Math.min(maxFrames, FRAMES_PER_READ), frameCount - nextFrame);
+        buffer.clear();
+        buffer.limit(frames * format.blockAlign);
+        long position = dataOffset + nextFrame * format.blockAlign;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Sample data ends early at frame " + nextFrame);
+            }
+        }
+        buffer.flip();
+        nextFrame += frames;
+        return frames;
+    }
+
+    /** Returns the buffer filled by the last {@link #fill(int)}. */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
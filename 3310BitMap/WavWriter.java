@@ -0,0 +1,212 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a WAV file from blocks of normalized float samples.
+ * <p>
+ * The file is laid out as a {@code RIFF} header, a {@code fmt } chunk and a {@code data}
+ * chunk; float files also have the {@code fact} chunk that the RIFF specification requires
+ * for non-PCM data, and an 18-byte {@code fmt } chunk with an empty extension. Frames are
+ * encoded into a large direct buffer that is flushed to the file channel whenever it fills
+ * up, so any length of audio can be written with constant memory. The
+ * RIFF and data sizes and the {@code fact} frame count are unknown until the last frame, and
+ * are patched in on {@link #close()}.
+ * <p>
+ * 8-, 16-, 24- and 32-bit integer PCM and 32-bit float samples can be written. Integer
+ * samples are rounded and saturated to their range.
+ */
+public class WavWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int RIFF_SIZE_OFFSET = 4;
+
+    // Header layouts: RIFF 12 bytes, fmt 24 (PCM) or 26 (float), fact 12 (float only), data 8
+    private static final int PCM_HEADER_SIZE = 44;
+    private static final int FLOAT_HEADER_SIZE = 58;
+    private static final int FACT_LENGTH_OFFSET = 46;
+
+    private final FileChannel channel;
+    private final WavFormat format;
+    private final ByteBuffer buffer;
+    private final int bytesPerSample;
+    private final boolean floatData;
+    private final int headerSize;
+    private long dataSize;
+
+    /**
+     * Creates the file and writes its headers with zero sizes.
+     *
+     * @param  path    the file to create or replace.
+     * @param  format  the sample format, from {@link WavFormat#pcm} or {@link WavFormat#ieeeFloat}.
+     * @throws IOException if the file cannot be created.
+     */
+    public WavWriter(Path path, WavFormat format) throws IOException {
+        boolean supported = format.sampleFormat == WavFormat.FORMAT_IEEE_FLOAT
+                ? format.smpBits == 32
+                : format.sampleFormat == WavFormat.FORMAT_PCM
+                        && (format.smpBits == 8 || format.smpBits == 16 || format.smpBits == 24 || format.smpBits == 32);
+        if (!supported) {
+            throw new IllegalArgumentException("Cannot write " + format.smpBits + "-bit samples of format " + format.sampleFormat);
+        }
+        this.format = format;
+        this.bytesPerSample = format.bytesPerSample();
+        this.floatData = format.sampleFormat == WavFormat.FORMAT_IEEE_FLOAT;
+        this.headerSize = floatData ? FLOAT_HEADER_SIZE : PCM_HEADER_SIZE;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, format.blockAlign)).order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        buffer.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        buffer.putInt(0);
+        buffer.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+
+        buffer.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        buffer.putInt(floatData ? 18 : 16);
+        buffer.putShort((short) format.sampleFormat);
+        buffer.putShort((short) format.numChn);
+        buffer.putInt(format.smpRate);
+        buffer.putInt(format.byteRate);
+        buffer.putShort((short) format.blockAlign);
+        buffer.putShort((short) format.smpBits);
+        if (floatData) {
+            buffer.putShort((short) 0);
+
+            buffer.put((byte) 'f').put((byte) 'a').put((byte) 'c').put((byte) 't');
+            buffer.putInt(4);
+            buffer.putInt(0);
+        }
+
+        buffer.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        buffer.putInt(0);
+    }
+
+    public WavFormat getFormat() {
+        return format;
+    }
+
+    /** Returns the number of frames written so far. */
+    public long getFramesWritten() {
+        return dataSize / format.blockAlign;
+    }
+
+    /**
+     * Appends frames from one array per channel.
+     *
+     * @param  channels  one source array per channel, normalized to -1..1.
+     * @param  offset    the index in each array of the first frame to write.
+     * @param  frames    the number of frames to write.
+     * @throws IOException if the frames cannot be written.
+     */
+    public void writeFrames(float[][] channels, int offset, int frames) throws IOException {
+        if (channels.length < format.numChn) {
+            throw new IllegalArgumentException("Expected " + format.numChn + " channels, got " + channels.length);
+        }
+        int framesPerFlush = buffer.capacity() / format.blockAlign;
+        while (frames > 0) {
+            if (buffer.remaining() < format.blockAlign) {
+                flush();
+            }
+            int count = Math.min(frames, Math.min(framesPerFlush, buffer.remaining() / format.blockAlign));
+            encode(channels, offset, count);
+            offset += count;
+            frames -= count;
+            dataSize += (long) count * format.blockAlign;
+        }
+    }
+
+    private void encode(float[][] channels, int offset, int frames) {
+        int numChn = format.numChn;
+        if (floatData) {
+            for (int f = offset; f < offset + frames; f++) {
+                for (int ch = 0; ch < numChn; ch++) {
+                    buffer.putFloat(channels[ch][f]);
+                }
+            }
+            return;
+        }
+        switch (bytesPerSample) {
+            case 1:
+                for (int f = offset; f < offset + frames; f++) {
+                    for (int ch = 0; ch < numChn; ch++) {
+                        buffer.put((byte) (quantize(channels[ch][f], 1L << 7) + 128));
+                    }
+                }
+                break;
+            case 2:
+                for (int f = offset; f < offset + frames; f++) {
+                    for (int ch = 0; ch < numChn; ch++) {
+                        buffer.putShort((short) quantize(channels[ch][f], 1L << 15));
+                    }
+                }
+                break;
+            case 3:
+                for (int f = offset; f < offset + frames; f++) {
+                    for (int ch = 0; ch < numChn; ch++) {
+                        int sample = quantize(channels[ch][f], 1L << 23);
+                        buffer.put((byte) sample).put((byte) (sample >> 8)).put((byte) (sample >> 16));
+                    }
+                }
+                break;
+            default:
+                for (int f = offset; f < offset + frames; f++) {
+                    for (int ch = 0; ch < numChn; ch++) {
+                        buffer.putInt(quantize(channels[ch][f], 1L << 31));
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Scales a normalized sample by {@code fullScale}, the same factor {@link PcmDecoder} divides
+     * by, so decoded samples are written back unchanged. The result is rounded and saturated to
+     * {@code -fullScale..fullScale - 1}.
+     */
+    private static int quantize(float sample, long fullScale) {
+        long scaled = Math.round((double) sample * fullScale);
+        return (int) Math.max(-fullScale, Math.min(fullScale - 1, scaled));
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the remaining frames and patches the RIFF and data chunk sizes.
+     *
+     * @throws IOException if the file cannot be completed or is larger than a RIFF file can describe.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // Chunks are word aligned, so an odd-sized data chunk is followed by a pad byte
+            if ((dataSize & 1) != 0) {
+                buffer.put((byte) 0);
+            }
+            flush();
+            long riffSize = headerSize - 8 + dataSize + (dataSize & 1);
+            if (riffSize > 0xFFFFFFFFL) {
+                throw new IOException("WAV data of " + dataSize + " bytes exceeds the 4 GiB RIFF limit");
+            }
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.write(size.putInt(0, (int) riffSize), RIFF_SIZE_OFFSET);
+            size.clear();
+            channel.write(size.putInt(0, (int) dataSize), headerSize - 4);
+            if (floatData) {
+                size.clear();
+                channel.write(size.putInt(0, (int) getFramesWritten()), FACT_LENGTH_OFFSET);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
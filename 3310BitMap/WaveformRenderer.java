@@ -0,0 +1,173 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import javax.imageio.ImageIO;
+
+/**
+ * Rasterizes waveforms from {@link PeakPyramid}s into an off-screen image.
+ * <p>
+ * Each layer, typically the original signal and the output of one effect, is drawn into its
+ * own transparent {@code int[]} buffer, one vertical min/max span per pixel column and channel
+ * with the RMS band inside it. Layers are rasterized in parallel and then composited in the
+ * order they were added into a single {@code int}-backed {@link BufferedImage}, which a canvas
+ * shows with one {@code drawImage}. Nothing here touches the screen, so rendering can run on
+ * any thread, and in headless mode the image can be saved as PNG or BMP.
+ */
+public class WaveformRenderer {
+
+    /** Background of the composited image. */
+    public static final int BACKGROUND = 0xFFFFFFFF;
+
+    private static class Layer {
+        private final PeakPyramid peaks;
+        private final int peakColor;
+        private final int rmsColor;
+
+        Layer(PeakPyramid peaks, Color color) {
+            this.peaks = peaks;
+            this.peakColor = 0xFF000000 | color.getRGB();
+            // The RMS band is drawn halfway between the layer colour and white
+            this.rmsColor = PixelRaster.pack((color.getRed() + 255) / 2, (color.getGreen() + 255) / 2, (color.getBlue() + 255) / 2);
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final List<Layer> layers = new ArrayList<>();
+
+    public WaveformRenderer(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Adds a layer, drawn over the layers added before it.
+     *
+     * @param  peaks  the waveform to draw; every channel gets its own horizontal lane.
+     * @param  color  the colour of the min/max spans.
+     * @return this renderer.
+     */
+    public WaveformRenderer addLayer(PeakPyramid peaks, Color color) {
+        layers.add(new Layer(peaks, color));
+        return this;
+    }
+
+    /**
+     * Rasterizes every layer and composites them.
+     *
+     * @return a new {@code TYPE_INT_RGB} image of the renderer's size.
+     */
+    public BufferedImage render() {
+        int[][] buffers = new int[layers.size()][];
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int i = 0; i < layers.size(); i++) {
+            int index = i;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    buffers[index] = rasterize(layers.get(index));
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(out, BACKGROUND);
+        for (int[] layer : buffers) {
+            for (int i = 0; i < out.length; i++) {
+                int pixel = layer[i];
+                if (pixel != 0) {
+                    out[i] = pixel;
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Draws one layer into a transparent buffer of packed pixels in top-down order.
+     */
+    private int[] rasterize(Layer layer) {
+        int[] pixels = new int[width * height];
+        PeakPyramid peaks = layer.peaks;
+        int numChn = peaks.getChannelCount();
+        int laneHeight = height / numChn;
+        float[] min = new float[width];
+        float[] max = new float[width];
+        float[] rms = new float[width];
+
+        for (int ch = 0; ch < numChn; ch++) {
+            peaks.query(ch, 0, Math.max(1, peaks.getFrameCount()), width, min, max, rms);
+            int center = ch * laneHeight + laneHeight / 2;
+            int amplitude = Math.max(1, laneHeight / 2 - 1);
+            for (int x = 0; x < width; x++) {
+                int top = toY(max[x], center, amplitude);
+                int bottom = toY(min[x], center, amplitude);
+                fillColumn(pixels, x, top, bottom, layer.peakColor);
+                // The RMS band is symmetric around zero and never wider than the peaks
+                int rmsTop = Math.max(top, toY(rms[x], center, amplitude));
+                int rmsBottom = Math.min(bottom, toY(-rms[x], center, amplitude));
+                fillColumn(pixels, x, rmsTop, rmsBottom, layer.rmsColor);
+            }
+        }
+        return pixels;
+    }
+
+    private static int toY(float sample, int center, int amplitude) {
+        float clamped = Math.max(-1f, Math.min(1f, sample));
+        return center - Math.round(clamped * amplitude);
+    }
+
+    private void fillColumn(int[] pixels, int x, int top, int bottom, int color) {
+        for (int y = Math.max(0, top); y <= Math.min(height - 1, bottom); y++) {
+            pixels[y * width + x] = color;
+        }
+    }
+
+    /**
+     * Saves an image as PNG or as a 24-bit BMP, chosen by the file extension.
+     *
+     * @param  image  the image, for example from {@link #render()}.
+     * @param  path   a {@code .png} or {@code .bmp} file to create or replace.
+     * @throws IOException if the file cannot be written or has another extension.
+     */
+    public static void export(BufferedImage image, Path path) throws IOException {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".png")) {
+            if (!ImageIO.write(image, "png", path.toFile())) {
+                throw new IOException("No PNG writer available");
+            }
+        } else if (name.endsWith(".bmp")) {
+            BmpWriter.write(toRaster(image), path, 24);
+        } else {
+            throw new IOException("Snapshots can be saved as .png or .bmp, not " + path.getFileName());
+        }
+    }
+
+    /**
+     * Copies an image into a raster, turning the top-down screen order into the bottom-up file
+     * row order.
+     */
+    private static PixelRaster toRaster(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        PixelRaster raster = new PixelRaster(width, height);
+        int[] dst = raster.getPixels();
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, dst, (height - 1 - y) * width, width);
+        }
+        return raster;
+    }
+}
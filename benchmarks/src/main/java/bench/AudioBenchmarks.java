@@ -0,0 +1,61 @@
+package bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PCM decoding of each stored sample format, on stereo 44.1 kHz audio of one second and one
+ * minute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class AudioBenchmarks {
+
+    private static final int NUM_CHN = 2;
+
+    @Param({"44100", "2646000"})
+    public int frames;
+
+    /** Stored sample format: 16- or 24-bit PCM, or 32-bit float. */
+    @Param({"16", "24", "float"})
+    public String sampleFormat;
+
+    private Object decoder;
+    private ByteBuffer sampleBytes;
+    private float[][] decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Object format = sampleFormat.equals("float")
+                ? (Object) Core.FLOAT_FORMAT.invokeExact(NUM_CHN, 44100)
+                : (Object) Core.PCM_FORMAT.invokeExact(NUM_CHN, 44100, Integer.parseInt(sampleFormat));
+        decoder = (Object) Core.DECODER_FOR.invokeExact(format);
+        int bytesPerSample = sampleFormat.equals("float") ? 4 : Integer.parseInt(sampleFormat) / 8;
+        sampleBytes = Synthetic.sampleBytes(NUM_CHN * bytesPerSample, frames);
+        decoded = new float[NUM_CHN][frames];
+    }
+
+    @Benchmark
+    public float[][] decodePcm() throws Throwable {
+        sampleBytes.rewind();
+        Core.PCM_DECODE.invokeExact(decoder, sampleBytes, frames, decoded, 0);
+        return decoded;
+    }
+}
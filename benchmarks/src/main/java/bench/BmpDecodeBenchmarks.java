@@ -0,0 +1,58 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BMP decode of square uncompressed images, through the same header-driven path the viewer
+ * and the batch tool use. The header is parsed once in the setup, so only the pixel decode
+ * is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BmpDecodeBenchmarks {
+
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    @Param({"8", "24", "32"})
+    public int bitsPerPx;
+
+    private FileChannel channel;
+    private Object header;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        channel = FileChannel.open(Synthetic.bmpFile(size, size, bitsPerPx));
+        header = (Object) Core.READ_BMP_HEADER.invokeExact(channel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+    }
+
+    @Benchmark
+    public Object decodeBmp() throws Throwable {
+        return (Object) Core.DECODE_BMP.invokeExact(channel, header);
+    }
+}
@@ -0,0 +1,131 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Method handles onto the parser classes.
+ * <p>
+ * The parsers live in the unnamed package, which Java code in a named package cannot refer
+ * to, while JMH refuses benchmarks in the unnamed package. The benchmarks therefore call
+ * through these handles. They are {@code static final}, so the JIT binds them as constants and
+ * inlines the targets as if they were direct calls. Types from the unnamed package appear
+ * as {@code Object} in the handle signatures.
+ */
+final class Core {
+
+    /** {@code new PixelRaster(int width, int height, int stride, int[] pixels)} */
+    static final MethodHandle NEW_RASTER = constructor("PixelRaster", int.class, int.class, int.class, int[].class);
+    /** {@code BmpHeader.read(FileChannel)} */
+    static final MethodHandle READ_BMP_HEADER = method("BmpHeader", "read", "BmpHeader", java.nio.channels.FileChannel.class);
+    /** {@code BmpDecoder.decode(FileChannel, BmpHeader)} */
+    static final MethodHandle DECODE_BMP = method("BmpDecoder", "decode", "PixelRaster",
+            java.nio.channels.FileChannel.class, "BmpHeader");
+    /** {@code Bitmap.applyEdgeDetectionKernel(PixelRaster)} */
+    static final MethodHandle EDGE = method("Bitmap", "applyEdgeDetectionKernel", "PixelRaster", "PixelRaster");
+    /** {@code Bitmap.applyGaussianBlur(PixelRaster)} */
+    static final MethodHandle GAUSSIAN = method("Bitmap", "applyGaussianBlur", "PixelRaster", "PixelRaster");
+    /** {@code new ConvolutionKernel(int size, int[] weights, int divisor)} */
+    static final MethodHandle NEW_KERNEL = constructor("ConvolutionKernel", int.class, int[].class, int.class);
+    /** {@code ConvolutionKernel.BOX_3X3} */
+    static final Object BOX_3X3 = constant("ConvolutionKernel", "BOX_3X3");
+    /** {@code EdgeMode.CLAMP} */
+    static final Object CLAMP = constant("EdgeMode", "CLAMP");
+    /** {@code EdgeMode.SKIP} */
+    static final Object SKIP = constant("EdgeMode", "SKIP");
+    /** {@code Convolution.apply(PixelRaster, ConvolutionKernel, EdgeMode)} */
+    static final MethodHandle CONVOLVE = method("Convolution", "apply", "PixelRaster", "PixelRaster", "ConvolutionKernel", "EdgeMode");
+    /** {@code ImageCanvas.toBufferedImage(PixelRaster)} */
+    static final MethodHandle TO_IMAGE = method("ImageCanvas", "toBufferedImage", java.awt.image.BufferedImage.class, "PixelRaster");
+
+    /** {@code WavSampleReader.open(Path)} */
+    static final MethodHandle OPEN_WAV = method("WavSampleReader", "open", "WavSampleReader", java.nio.file.Path.class);
+    /** {@code WavFormat.pcm(int, int, int)} */
+    static final MethodHandle PCM_FORMAT = method("WavFormat", "pcm", "WavFormat", int.class, int.class, int.class);
+    /** {@code WavFormat.ieeeFloat(int, int)} */
+    static final MethodHandle FLOAT_FORMAT = method("WavFormat", "ieeeFloat", "WavFormat", int.class, int.class);
+    /** {@code PcmDecoder.forFormat(WavFormat)} */
+    static final MethodHandle DECODER_FOR = method("PcmDecoder", "forFormat", "PcmDecoder", "WavFormat");
+    /** {@code PcmDecoder#decode(ByteBuffer, int, float[][], int)} */
+    static final MethodHandle PCM_DECODE = virtual("PcmDecoder", "decode", void.class,
+            java.nio.ByteBuffer.class, int.class, float[][].class, int.class);
+
+    /** {@code AudioEffect.fadeOut(long, long)} */
+    static final MethodHandle FADE_OUT = method("AudioEffect", "fadeOut", "AudioEffect", long.class, long.class);
+    /** {@code AudioEffect.hardClip(double)} */
+    static final MethodHandle HARD_CLIP = method("AudioEffect", "hardClip", "AudioEffect", double.class);
+    /** {@code new EffectsEngine()} */
+    static final MethodHandle NEW_ENGINE = constructor("EffectsEngine");
+    /** {@code EffectsEngine#add(AudioEffect)} */
+    static final MethodHandle ENGINE_ADD = virtual("EffectsEngine", "add", "EffectsEngine", "AudioEffect");
+    /** {@code EffectsEngine#process(float[][], int, int, long)} */
+    static final MethodHandle ENGINE_PROCESS = virtual("EffectsEngine", "process", void.class,
+            float[][].class, int.class, int.class, long.class);
+
+    private Core() {
+    }
+
+    private static MethodHandle method(String owner, String name, Object returnType, Object... parameterTypes) {
+        try {
+            return erase(MethodHandles.publicLookup().findStatic(type(owner), name, methodType(returnType, parameterTypes)));
+        } catch (ReflectiveOperationException ex) {
+            throw new LinkageError("Cannot find " + owner + "." + name, ex);
+        }
+    }
+
+    private static MethodHandle virtual(String owner, String name, Object returnType, Object... parameterTypes) {
+        try {
+            return erase(MethodHandles.publicLookup().findVirtual(type(owner), name, methodType(returnType, parameterTypes)));
+        } catch (ReflectiveOperationException ex) {
+            throw new LinkageError("Cannot find " + owner + "." + name, ex);
+        }
+    }
+
+    private static MethodHandle constructor(String owner, Object... parameterTypes) {
+        try {
+            return erase(MethodHandles.publicLookup().findConstructor(type(owner), methodType(void.class, parameterTypes)));
+        } catch (ReflectiveOperationException ex) {
+            throw new LinkageError("Cannot find constructor of " + owner, ex);
+        }
+    }
+
+    private static Object constant(String owner, String name) {
+        try {
+            return type(owner).getField(name).get(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new LinkageError("Cannot find " + owner + "." + name, ex);
+        }
+    }
+
+    /** Resolves a {@code Class} or the name of a class in the unnamed package. */
+    private static Class<?> type(Object type) throws ClassNotFoundException {
+        return type instanceof Class ? (Class<?>) type : Class.forName((String) type);
+    }
+
+    private static MethodType methodType(Object returnType, Object... parameterTypes) throws ClassNotFoundException {
+        Class<?>[] parameters = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = type(parameterTypes[i]);
+        }
+        return MethodType.methodType(type(returnType), parameters);
+    }
+
+    /** Replaces every unnamed-package type in the handle's signature with {@code Object}. */
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isUnnamed(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (isUnnamed(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    private static boolean isUnnamed(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+}
@@ -0,0 +1,81 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The fade and clamp effects, on stereo 44.1 kHz audio of one second and one minute.
+ * <p>
+ * The effects work in place, so each benchmark first restores its input from a pristine copy.
+ * Per-invocation setup would distort operations this short, so the copy is timed along with
+ * the effect instead; subtract the {@link #copyInput} score to get the effect alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EffectBenchmarks {
+
+    private static final int NUM_CHN = 2;
+
+    @Param({"44100", "2646000"})
+    public int frames;
+
+    private float[][] source;
+    private float[][] work;
+    private Object fadeOut;
+    private Object clamp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        source = Synthetic.channels(NUM_CHN, frames);
+        work = new float[NUM_CHN][frames];
+
+        Object engine = (Object) Core.NEW_ENGINE.invokeExact();
+        fadeOut = (Object) Core.ENGINE_ADD.invokeExact(engine, (Object) Core.FADE_OUT.invokeExact(0L, (long) frames));
+        engine = (Object) Core.NEW_ENGINE.invokeExact();
+        clamp = (Object) Core.ENGINE_ADD.invokeExact(engine, (Object) Core.HARD_CLIP.invokeExact(-5.0));
+    }
+
+    /** Restores the effect input. */
+    private void resetWork() {
+        for (int ch = 0; ch < NUM_CHN; ch++) {
+            System.arraycopy(source[ch], 0, work[ch], 0, frames);
+        }
+    }
+
+    /** Baseline of the effect benchmarks: the input copy alone. */
+    @Benchmark
+    public float[][] copyInput() {
+        resetWork();
+        return work;
+    }
+
+    @Benchmark
+    public float[][] fadeOut() throws Throwable {
+        resetWork();
+        Core.ENGINE_PROCESS.invokeExact(fadeOut, work, 0, frames, 0L);
+        return work;
+    }
+
+    @Benchmark
+    public float[][] clamp() throws Throwable {
+        resetWork();
+        Core.ENGINE_PROCESS.invokeExact(clamp, work, 0, frames, 0L);
+        return work;
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The three 3x3 kernels and the canvas pixel upload, on square images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class ImageBenchmarks {
+
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    private Object raster;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        raster = Synthetic.raster(size, size);
+    }
+
+    @Benchmark
+    public Object blurKernel() throws Throwable {
+        return (Object) Core.CONVOLVE.invokeExact(raster, Core.BOX_3X3, Core.SKIP);
+    }
+
+    @Benchmark
+    public Object edgeKernel() throws Throwable {
+        return (Object) Core.EDGE.invokeExact(raster);
+    }
+
+    @Benchmark
+    public Object gaussianKernel() throws Throwable {
+        return (Object) Core.GAUSSIAN.invokeExact(raster);
+    }
+
+    @Benchmark
+    public BufferedImage canvasUpload() throws Throwable {
+        return (BufferedImage) Core.TO_IMAGE.invokeExact(raster);
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Non-separable kernels of growing size on a 1024x1024 image, for placing the crossover
+ * between the spatial and the FFT convolution. Run once as is and once with
+ * {@code -jvmArgsAppend -Dbitmap.fftMinSize=0} to time the spatial path alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class KernelBenchmarks {
+
+    @Param({"5", "7", "9", "13", "17", "33", "65"})
+    public int kernelSize;
+
+    private Object raster;
+    private Object kernel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        raster = Synthetic.raster(1024, 1024);
+        // Random positive weights, which no kernel factorization can turn into two 1D passes
+        Random random = new Random(kernelSize);
+        int[] weights = new int[kernelSize * kernelSize];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1 + random.nextInt(9);
+            sum += weights[i];
+        }
+        kernel = (Object) Core.NEW_KERNEL.invokeExact(kernelSize, weights, sum);
+    }
+
+    @Benchmark
+    public Object convolve() throws Throwable {
+        return (Object) Core.CONVOLVE.invokeExact(raster, kernel, Core.CLAMP);
+    }
+}
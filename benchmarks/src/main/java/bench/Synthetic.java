@@ -0,0 +1,131 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Generates the benchmark inputs, so the benchmarks need no sample files and run offline.
+ * Every generator is seeded, so runs on different machines measure the same data.
+ */
+final class Synthetic {
+
+    private static final long SEED = 3310;
+
+    private Synthetic() {
+    }
+
+    /** Returns {@code count} opaque pixels of noise with some smooth structure, in raster order. */
+    static int[] pixels(int count) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            int base = (i * 7) & 0xFF;
+            pixels[i] = 0xFF000000 | (base << 16) | (random.nextInt(256) << 8) | (255 - base);
+        }
+        return pixels;
+    }
+
+    /** Returns a raster of {@link #pixels} noise. */
+    static Object raster(int width, int height) throws Throwable {
+        return (Object) Core.NEW_RASTER.invokeExact(width, height, width, pixels(width * height));
+    }
+
+    /**
+     * Writes an uncompressed bottom-up BMP file of random pixels. An 8-bit file gets a
+     * 256-entry grey palette, and a 32-bit file has the alpha byte set to opaque.
+     *
+     * @param  bitsPerPx  the bit depth, 8, 24 or 32.
+     * @return the temporary file, deleted when the JVM exits.
+     */
+    static Path bmpFile(int width, int height, int bitsPerPx) throws IOException {
+        if (bitsPerPx != 8 && bitsPerPx != 24 && bitsPerPx != 32) {
+            throw new IllegalArgumentException("Unsupported bit depth: " + bitsPerPx);
+        }
+        int paletteSize = bitsPerPx == 8 ? 256 * 4 : 0;
+        int firstPxAddr = 54 + paletteSize;
+        int rowSize = (width * bitsPerPx + 31) / 32 * 4;
+        int imageSize = rowSize * height;
+        ByteBuffer buffer = ByteBuffer.allocate(firstPxAddr + imageSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 'B').put((byte) 'M').putInt(firstPxAddr + imageSize).putInt(0).putInt(firstPxAddr);
+        buffer.putInt(40).putInt(width).putInt(height).putShort((short) 1).putShort((short) bitsPerPx);
+        buffer.putInt(0).putInt(imageSize).putInt(2835).putInt(2835).putInt(paletteSize / 4).putInt(0);
+        for (int i = 0; i < paletteSize / 4; i++) {
+            buffer.put((byte) i).put((byte) i).put((byte) i).put((byte) 0);
+        }
+        Random random = new Random(SEED);
+        byte[] row = new byte[rowSize];
+        for (int y = 0; y < height; y++) {
+            random.nextBytes(row);
+            if (bitsPerPx == 32) {
+                for (int x = 3; x < rowSize; x += 4) {
+                    row[x] = (byte) 0xFF;
+                }
+            }
+            buffer.put(row);
+        }
+        return write("bench", ".bmp", buffer);
+    }
+
+    /** Returns {@code frames} frames of a two-tone signal with noise, one array per channel. */
+    static float[][] channels(int numChn, int frames) {
+        Random random = new Random(SEED);
+        float[][] channels = new float[numChn][frames];
+        for (int ch = 0; ch < numChn; ch++) {
+            for (int i = 0; i < frames; i++) {
+                double t = i / 44100.0;
+                channels[ch][i] = (float) (0.6 * Math.sin(2 * Math.PI * 440 * t) + 0.3 * Math.sin(2 * Math.PI * (1000 + ch * 100) * t)
+                        + 0.05 * random.nextGaussian());
+            }
+        }
+        return channels;
+    }
+
+    /** Returns little-endian sample bytes of {@code frames} random frames. */
+    static ByteBuffer sampleBytes(int blockAlign, int frames) {
+        byte[] bytes = new byte[blockAlign * frames];
+        new Random(SEED).nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    /**
+     * Writes a 16-bit PCM WAV file with a {@code LIST} chunk before the data, like files from
+     * most recorders, so the header parse has to walk past it.
+     *
+     * @return the temporary file, deleted when the JVM exits.
+     */
+    static Path wavFile(int numChn, int frames) throws IOException {
+        int blockAlign = numChn * 2;
+        int dataSize = blockAlign * frames;
+        byte[] info = "INFOISFT\u000e\u0000\u0000\u0000binaryparsing\u0000".getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 24 + 8 + info.length + 8 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(java.nio.charset.StandardCharsets.US_ASCII)).putInt(buffer.capacity() - 8);
+        buffer.put("WAVE".getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        buffer.put("fmt ".getBytes(java.nio.charset.StandardCharsets.US_ASCII)).putInt(16);
+        buffer.putShort((short) 1).putShort((short) numChn).putInt(44100).putInt(44100 * blockAlign)
+                .putShort((short) blockAlign).putShort((short) 16);
+        buffer.put("LIST".getBytes(java.nio.charset.StandardCharsets.US_ASCII)).putInt(info.length).put(info);
+        buffer.put("data".getBytes(java.nio.charset.StandardCharsets.US_ASCII)).putInt(dataSize);
+        buffer.put(sampleBytes(blockAlign, frames));
+        return write("bench", ".wav", buffer);
+    }
+
+    private static Path write(String prefix, String suffix, ByteBuffer buffer) throws IOException {
+        Path path = Files.createTempFile(prefix, suffix);
+        path.toFile().deleteOnExit();
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * WAV header parsing. Opening a file walks its RIFF chunks and parses {@code fmt}, and reads
+ * none of the samples, so the cost does not depend on the length or format of the audio.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class WavHeaderBenchmarks {
+
+    private Path wavFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        wavFile = Synthetic.wavFile(2, 1024);
+    }
+
+    @Benchmark
+    public long parseWavHeader() throws Throwable {
+        try (Closeable reader = (Closeable) (Object) Core.OPEN_WAV.invokeExact(wavFile)) {
+            return reader.hashCode();
+        }
+    }
+}